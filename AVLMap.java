@@ -0,0 +1,307 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * AVLMap is a sorted map kept in a LinkedBinarySearchTree of its keys,
+ * whose nodes also carry the values. Every lookup or update, including
+ * computeIfAbsent, compute and merge, records a single root-to-leaf
+ * search path and rebalances along it at most once, so a
+ * read-modify-write costs one descent instead of a find followed by a
+ * removal and an insertion. Keys are compared by their natural order.
+ */
+public class AVLMap<K,V> extends AbstractMap<K,V>{
+  private LinkedBinarySearchTree<K> keys = new LinkedBinarySearchTree<K>();
+
+  // the search path of the last descent, reused by every update
+  private BinaryTreeNode<K>[] path;
+  private boolean[] wentLeft;
+  private int depth;
+
+  /**
+   * Creates an empty map.
+   */
+  public AVLMap(){
+    super();
+  }
+
+  /**
+   * Returns the number of key-value mappings in this map.
+   *
+   * @return the number of mappings
+   */
+  public int size(){
+    return keys.size();
+  }
+
+  public boolean isEmpty(){
+    return keys.isEmpty();
+  }
+
+  public void clear(){
+    keys.root = null;
+  }
+
+  public boolean containsKey(Object key){
+    return findNode((K)key) != null;
+  }
+
+  public V get(Object key){
+    MapNode<K,V> node = findNode((K)key);
+    return (node == null) ? null : node.value;
+  }
+
+  public V put(K key, V value){
+    MapNode<K,V> node = descend(key);
+    if (node != null){
+      V oldValue = node.value;
+      node.value = value;
+      return oldValue;
+    }
+    insert(key, value);
+    return null;
+  }
+
+  public V remove(Object key){
+    MapNode<K,V> node = descend((K)key);
+    if (node == null){
+      return null;
+    }
+    delete(node);
+    return node.value;
+  }
+
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction){
+    MapNode<K,V> node = descend(key);
+    if (node != null && node.value != null){
+      return node.value;
+    }
+    V value = mappingFunction.apply(key);
+    if (value != null){
+      if (node != null){
+        node.value = value;
+      }else{
+        insert(key, value);
+      }
+    }
+    return value;
+  }
+
+  public V computeIfPresent(K key,
+    BiFunction<? super K, ? super V, ? extends V> remappingFunction){
+    MapNode<K,V> node = descend(key);
+    if (node == null || node.value == null){
+      return null;
+    }
+    return replace(node, remappingFunction.apply(key, node.value));
+  }
+
+  public V compute(K key,
+    BiFunction<? super K, ? super V, ? extends V> remappingFunction){
+    MapNode<K,V> node = descend(key);
+    V value = remappingFunction.apply(key, (node == null) ? null : node.value);
+    if (node != null){
+      return replace(node, value);
+    }
+    if (value != null){
+      insert(key, value);
+    }
+    return value;
+  }
+
+  public V merge(K key, V value,
+    BiFunction<? super V, ? super V, ? extends V> remappingFunction){
+    if (value == null){
+      throw new NullPointerException();
+    }
+    MapNode<K,V> node = descend(key);
+    if (node == null){
+      insert(key, value);
+      return value;
+    }
+    if (node.value == null){
+      node.value = value;
+      return value;
+    }
+    return replace(node, remappingFunction.apply(node.value, value));
+  }
+
+  /**
+   * Returns a set view of the mappings of this map, in ascending key order.
+   *
+   * @return a set view of the mappings
+   */
+  public Set<Map.Entry<K,V>> entrySet(){
+    return new AbstractSet<Map.Entry<K,V>>(){
+      public int size(){
+        return keys.size();
+      }
+
+      public Iterator<Map.Entry<K,V>> iterator(){
+        return new EntryIterator();
+      }
+    };
+  }
+
+  /**
+   * Finds the node of the specified key without recording the path.
+   */
+  private MapNode<K,V> findNode(K key){
+    Comparable<K> comparableKey = (Comparable<K>)key;
+    BinaryTreeNode<K> current = keys.root;
+    while (current != null){
+      int comparison = comparableKey.compareTo(current.element);
+      if (comparison == 0){
+        return (MapNode<K,V>)current;
+      }
+      current = (comparison < 0) ? current.left : current.right;
+    }
+    return null;
+  }
+
+  /**
+   * Searches for the node of the specified key, recording the nodes above
+   * it (or above the empty spot where it belongs) in the path.
+   *
+   * @param key the key being sought
+   * @return the node holding the key, or null if there is none
+   */
+  private MapNode<K,V> descend(K key){
+    if (!(key instanceof Comparable)){
+      throw new NonComparableElementException("AVLMap");
+    }
+    Comparable<K> comparableKey = (Comparable<K>)key;
+    if (path == null || path.length < keys.getHeight() + 2){
+      path = keys.newPath(keys.root);
+      wentLeft = new boolean[path.length];
+    }
+    depth = 0;
+    BinaryTreeNode<K> current = keys.root;
+    while (current != null){
+      int comparison = comparableKey.compareTo(current.element);
+      if (comparison == 0){
+        return (MapNode<K,V>)current;
+      }
+      path[depth] = current;
+      wentLeft[depth] = comparison < 0;
+      current = wentLeft[depth] ? current.left : current.right;
+      depth++;
+    }
+    return null;
+  }
+
+  /**
+   * Hangs a new node at the end of the last recorded path.
+   */
+  private void insert(K key, V value){
+    keys.root = keys.retrace(path, wentLeft, depth,
+      new MapNode<K,V>(key, value));
+  }
+
+  /**
+   * Unlinks a node found by the last descent.
+   */
+  private void delete(MapNode<K,V> node){
+    keys.root = keys.retrace(path, wentLeft, depth, keys.remove(node));
+    node.left = null;
+    node.right = null;
+  }
+
+  /**
+   * Stores a computed value in a node found by the last descent, removing
+   * the node if the value is null.
+   */
+  private V replace(MapNode<K,V> node, V value){
+    if (value == null){
+      delete(node);
+    }else{
+      node.value = value;
+    }
+    return value;
+  }
+
+  /**
+   * MapNode is a node of the key tree that also holds the mapped value.
+   */
+  private static class MapNode<K,V> extends BinaryTreeNode<K>
+    implements Map.Entry<K,V>{
+    private V value;
+
+    public MapNode(K key, V value){
+      super(key);
+      this.value = value;
+    }
+
+    public K getKey(){
+      return element;
+    }
+
+    public V getValue(){
+      return value;
+    }
+
+    public V setValue(V value){
+      V oldValue = this.value;
+      this.value = value;
+      return oldValue;
+    }
+
+    public boolean equals(Object o){
+      if (!(o instanceof Map.Entry)){
+        return false;
+      }
+      Map.Entry<?,?> entry = (Map.Entry<?,?>)o;
+      return eq(element, entry.getKey()) && eq(value, entry.getValue());
+    }
+
+    public int hashCode(){
+      return (element == null ? 0 : element.hashCode())
+        ^ (value == null ? 0 : value.hashCode());
+    }
+
+    public String toString(){
+      return element + "=" + value;
+    }
+
+    private static boolean eq(Object a, Object b){
+      return (a == null) ? b == null : a.equals(b);
+    }
+  }
+
+  /**
+   * EntryIterator walks the nodes of the key tree in inorder. Removing an
+   * entry restarts the walk just past its key, since the removal may have
+   * rotated the nodes on the saved path.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K,V>>{
+    private LinkedBinaryTree.InOrderIterator<K> nodes = keys.iterator(null,
+      false, false);
+    private MapNode<K,V> last;
+
+    public boolean hasNext(){
+      return nodes.hasNext();
+    }
+
+    public Map.Entry<K,V> next(){
+      if (!nodes.hasNext()){
+        throw new NoSuchElementException();
+      }
+      last = (MapNode<K,V>)nodes.nextNode();
+      return last;
+    }
+
+    public void remove(){
+      if (last == null){
+        throw new IllegalStateException();
+      }
+      AVLMap.this.remove(last.element);
+      nodes = keys.iterator(last.element, false, false);
+      last = null;
+    }
+  }
+}
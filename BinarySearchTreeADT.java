@@ -1,3 +1,6 @@
+import java.util.Collection;
+import java.util.function.Consumer;
+
 /**
  * BinarySearchTreeADT defines the interface to a binary search tree.
  */
@@ -23,6 +26,91 @@ public interface BinarySearchTreeADT<T> extends BinaryTreeADT<T>{
    */
   public void removeAllOccurrences(T targetElement);
 
+  /**
+   * Returns the number of occurrences of the specified element in this tree.
+   *
+   * @param element the element to count
+   * @return the number of elements equal to the element
+   */
+  public int count(T element);
+
+  /**
+   * Adds all the elements of the specified collection to this tree.
+   *
+   * @param elements the elements to be added to this tree
+   */
+  public void addAll(Collection<T> elements);
+
+  /**
+   * Removes all occurrences of every element of the specified collection
+   * from this tree. Elements that are not in the tree are ignored.
+   *
+   * @param elements the elements to be removed from the tree
+   */
+  public void removeAll(Collection<T> elements);
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, from this tree.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement);
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, from this tree, passing each of them to evicted in
+   * ascending order.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @param evicted receives the removed elements
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement,
+    Consumer<? super T> evicted);
+
+  /**
+   * Removes the elements less than toElement from this tree.
+   *
+   * @param toElement the bound, exclusive
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement);
+
+  /**
+   * Removes the elements less than toElement from this tree, passing each
+   * of them to evicted in ascending order.
+   *
+   * @param toElement the bound, exclusive
+   * @param evicted receives the removed elements
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement, Consumer<? super T> evicted);
+
+  /**
+   * Removes the elements greater than or equal to fromElement from this
+   * tree.
+   *
+   * @param fromElement the bound, inclusive
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement);
+
+  /**
+   * Removes the elements greater than or equal to fromElement from this
+   * tree, passing each of them to evicted in ascending order.
+   *
+   * @param fromElement the bound, inclusive
+   * @param evicted receives the removed elements
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement, Consumer<? super T> evicted);
+
   /**
    * Removes and returns the smallest element from this tree.
    *
@@ -50,4 +138,58 @@ public interface BinarySearchTreeADT<T> extends BinaryTreeADT<T>{
    * @return the largest element in the tree
    */
   public T findMax();
+
+  /**
+   * Returns the element at the specified position in the sorted order of
+   * this tree.
+   *
+   * @param k the zero-based position of the element (0 is the smallest)
+   * @return the k-th smallest element in the tree
+   */
+  public T select(int k);
+
+  /**
+   * Returns the number of elements in this tree that are less than the
+   * specified element.
+   *
+   * @param element the element whose rank is sought
+   * @return the number of elements less than the element
+   */
+  public int rank(T element);
+
+  /**
+   * Returns the greatest element in this tree less than or equal to the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the greatest element no greater than the element, or null
+   */
+  public T floor(T element);
+
+  /**
+   * Returns the least element in this tree greater than or equal to the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the least element no less than the element, or null
+   */
+  public T ceiling(T element);
+
+  /**
+   * Returns the greatest element in this tree strictly less than the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the greatest element less than the element, or null
+   */
+  public T lower(T element);
+
+  /**
+   * Returns the least element in this tree strictly greater than the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the least element greater than the element, or null
+   */
+  public T higher(T element);
 }
@@ -0,0 +1,370 @@
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * BinarySearchTreeSet is a NavigableSet view of a LinkedBinarySearchTree,
+ * optionally restricted to a range of elements. Lookups and range queries
+ * descend the underlying tree, so they take O(log n) time plus O(k) for
+ * the k elements returned. The view is ordered as the tree is, by the
+ * tree's comparator or else the natural ordering of the elements.
+ * descendingSet() returns a view of the same range in reverse order,
+ * which keeps its bounds in ascending terms and swaps the meaning of each
+ * navigation method.
+ */
+public class BinarySearchTreeSet<T> extends AbstractSet<T>
+  implements NavigableSet<T>{
+  private LinkedBinarySearchTree<T> tree;
+  private T low, high;               // null when unbounded
+  private boolean lowInclusive, highInclusive;
+  private boolean descending;
+
+  /**
+   * Creates a view of the elements of the tree between the two bounds.
+   *
+   * @param tree the tree to view
+   * @param low the low bound, or null for none
+   * @param lowInclusive whether the low bound is in the view
+   * @param high the high bound, or null for none
+   * @param highInclusive whether the high bound is in the view
+   */
+  public BinarySearchTreeSet(LinkedBinarySearchTree<T> tree, T low,
+    boolean lowInclusive, T high, boolean highInclusive){
+    this.tree = tree;
+    this.low = low;
+    this.lowInclusive = lowInclusive;
+    this.high = high;
+    this.highInclusive = highInclusive;
+  }
+
+  private BinarySearchTreeSet(LinkedBinarySearchTree<T> tree, T low,
+    boolean lowInclusive, T high, boolean highInclusive, boolean descending){
+    this(tree, low, lowInclusive, high, highInclusive);
+    this.descending = descending;
+  }
+
+  private boolean tooLow(T element){
+    if (low == null){
+      return false;
+    }
+    int comparison = tree.compare(element, low);
+    return comparison < 0 || (comparison == 0 && !lowInclusive);
+  }
+
+  private boolean tooHigh(T element){
+    if (high == null){
+      return false;
+    }
+    int comparison = tree.compare(element, high);
+    return comparison > 0 || (comparison == 0 && !highInclusive);
+  }
+
+  private boolean inRange(T element){
+    return !tooLow(element) && !tooHigh(element);
+  }
+
+  /**
+   * Returns the number of elements in this view, computed from the ranks
+   * of the two bounds in O(log n) time.
+   *
+   * @return the number of elements in the view
+   */
+  public int size(){
+    int above = (high == null) ? tree.size() : tree.rank(high, highInclusive);
+    int below = (low == null) ? 0 : tree.rank(low, !lowInclusive);
+    return Math.max(above - below, 0);
+  }
+
+  public boolean isEmpty(){
+    return firstOrNull() == null;
+  }
+
+  public boolean contains(Object o){
+    T element = (T)o;
+    return inRange(element) && tree.contains(element);
+  }
+
+  public boolean add(T element){
+    if (!inRange(element)){
+      throw new IllegalArgumentException("Element out of range: " + element);
+    }
+    if (tree.contains(element)){
+      return false;
+    }
+    tree.addElement(element);
+    return true;
+  }
+
+  public boolean remove(Object o){
+    if (!contains(o)){
+      return false;
+    }
+    tree.removeElement((T)o);
+    return true;
+  }
+
+  public void clear(){
+    while (pollFirst() != null){
+    }
+  }
+
+  public Iterator<T> iterator(){
+    return new RangeIterator(descending);
+  }
+
+  public Iterator<T> descendingIterator(){
+    return new RangeIterator(!descending);
+  }
+
+  public Comparator<? super T> comparator(){
+    if (descending){
+      return Collections.reverseOrder(tree.comparator());
+    }
+    return tree.comparator();
+  }
+
+  public T first(){
+    T result = descending ? lastOrNull() : firstOrNull();
+    if (result == null){
+      throw new NoSuchElementException();
+    }
+    return result;
+  }
+
+  public T last(){
+    T result = descending ? firstOrNull() : lastOrNull();
+    if (result == null){
+      throw new NoSuchElementException();
+    }
+    return result;
+  }
+
+  private T firstOrNull(){
+    T result;
+    if (low == null){
+      result = tree.isEmpty() ? null : tree.findMin();
+    }else{
+      result = lowInclusive ? tree.ceiling(low) : tree.higher(low);
+    }
+    return (result == null || tooHigh(result)) ? null : result;
+  }
+
+  private T lastOrNull(){
+    T result;
+    if (high == null){
+      result = tree.isEmpty() ? null : tree.findMax();
+    }else{
+      result = highInclusive ? tree.floor(high) : tree.lower(high);
+    }
+    return (result == null || tooLow(result)) ? null : result;
+  }
+
+  public T lower(T element){
+    return descending ? above(element, false) : below(element, false);
+  }
+
+  public T floor(T element){
+    return descending ? above(element, true) : below(element, true);
+  }
+
+  public T ceiling(T element){
+    return descending ? below(element, true) : above(element, true);
+  }
+
+  public T higher(T element){
+    return descending ? below(element, false) : above(element, false);
+  }
+
+  /**
+   * Returns the greatest element of the range below the specified one, or
+   * equal to it if inclusive, in ascending terms.
+   */
+  private T below(T element, boolean inclusive){
+    if (tooHigh(element)){
+      return lastOrNull();
+    }
+    T result = inclusive ? tree.floor(element) : tree.lower(element);
+    return (result == null || tooLow(result)) ? null : result;
+  }
+
+  /**
+   * Returns the least element of the range above the specified one, or
+   * equal to it if inclusive, in ascending terms.
+   */
+  private T above(T element, boolean inclusive){
+    if (tooLow(element)){
+      return firstOrNull();
+    }
+    T result = inclusive ? tree.ceiling(element) : tree.higher(element);
+    return (result == null || tooHigh(result)) ? null : result;
+  }
+
+  public T pollFirst(){
+    return poll(descending ? lastOrNull() : firstOrNull());
+  }
+
+  public T pollLast(){
+    return poll(descending ? firstOrNull() : lastOrNull());
+  }
+
+  private T poll(T result){
+    if (result != null){
+      tree.removeElement(result);
+    }
+    return result;
+  }
+
+  /**
+   * Throws an IllegalArgumentException if the specified bound of a new
+   * view lies outside the range of this view.
+   */
+  private void checkBound(T bound, boolean inclusive){
+    if (low != null){
+      int comparison = tree.compare(bound, low);
+      if (comparison < 0 || (comparison == 0 && inclusive && !lowInclusive)){
+        throw new IllegalArgumentException("Bound out of range: " + bound);
+      }
+    }
+    if (high != null){
+      int comparison = tree.compare(bound, high);
+      if (comparison > 0 || (comparison == 0 && inclusive && !highInclusive)){
+        throw new IllegalArgumentException("Bound out of range: " + bound);
+      }
+    }
+  }
+
+  public NavigableSet<T> subSet(T fromElement, boolean fromInclusive,
+    T toElement, boolean toInclusive){
+    if (descending){
+      T element = fromElement;
+      fromElement = toElement;
+      toElement = element;
+      boolean inclusive = fromInclusive;
+      fromInclusive = toInclusive;
+      toInclusive = inclusive;
+    }
+    if (tree.compare(fromElement, toElement) > 0){
+      throw new IllegalArgumentException("fromElement > toElement");
+    }
+    checkBound(fromElement, fromInclusive);
+    checkBound(toElement, toInclusive);
+    return new BinarySearchTreeSet<T>(tree, fromElement, fromInclusive,
+      toElement, toInclusive, descending);
+  }
+
+  public NavigableSet<T> headSet(T toElement, boolean inclusive){
+    checkBound(toElement, inclusive);
+    if (descending){
+      return new BinarySearchTreeSet<T>(tree, toElement, inclusive, high,
+        highInclusive, true);
+    }
+    return new BinarySearchTreeSet<T>(tree, low, lowInclusive, toElement,
+      inclusive);
+  }
+
+  public NavigableSet<T> tailSet(T fromElement, boolean inclusive){
+    checkBound(fromElement, inclusive);
+    if (descending){
+      return new BinarySearchTreeSet<T>(tree, low, lowInclusive, fromElement,
+        inclusive, true);
+    }
+    return new BinarySearchTreeSet<T>(tree, fromElement, inclusive, high,
+      highInclusive);
+  }
+
+  public SortedSet<T> subSet(T fromElement, T toElement){
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  public SortedSet<T> headSet(T toElement){
+    return headSet(toElement, false);
+  }
+
+  public SortedSet<T> tailSet(T fromElement){
+    return tailSet(fromElement, true);
+  }
+
+  /**
+   * Returns a view of the same range in descending order. Changes to
+   * either view show in the other.
+   *
+   * @return the elements of this view in reverse order
+   */
+  public NavigableSet<T> descendingSet(){
+    return new BinarySearchTreeSet<T>(tree, low, lowInclusive, high,
+      highInclusive, !descending);
+  }
+
+  /**
+   * RangeIterator walks the elements of the view in either direction,
+   * starting from the bound it begins at and stopping at the other one.
+   * Removing an element restarts the walk at the elements equal to it,
+   * skipping those already returned.
+   */
+  private class RangeIterator implements Iterator<T>{
+    private boolean descending;
+    private Iterator<T> elements;
+    private T next, last;
+    private T current;   // the value of the elements most recently returned
+    private int run;     // how many of them are still in the tree
+
+    public RangeIterator(boolean descending){
+      this.descending = descending;
+      if (descending){
+        elements = tree.iterator(high, highInclusive, true);
+      }else{
+        elements = tree.iterator(low, lowInclusive, false);
+      }
+      advance();
+    }
+
+    private void advance(){
+      next = null;
+      if (elements.hasNext()){
+        T element = elements.next();
+        if (descending ? !tooLow(element) : !tooHigh(element)){
+          next = element;
+        }
+      }
+    }
+
+    public boolean hasNext(){
+      return next != null;
+    }
+
+    public T next(){
+      if (next == null){
+        throw new NoSuchElementException();
+      }
+      if (current != null && tree.compare(next, current) == 0){
+        run++;
+      }else{
+        current = next;
+        run = 1;
+      }
+      last = next;
+      advance();
+      return last;
+    }
+
+    public void remove(){
+      if (last == null){
+        throw new IllegalStateException();
+      }
+      tree.removeElement(last);
+      run--;
+      // the removal may have rotated the nodes on the saved path, so seek
+      // again; equal elements that were not returned yet must not be lost
+      elements = tree.iterator(last, true, descending);
+      for (int i = 0; i < run; i++){
+        elements.next();
+      }
+      last = null;
+      advance();
+    }
+  }
+}
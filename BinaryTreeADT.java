@@ -1,9 +1,10 @@
 import java.util.Iterator;
+import java.util.function.Consumer;
 
 /**
  * BinaryTreeADT defines the interface to a binary tree data structure.
  */
-public interface BinaryTreeADT<T>{
+public interface BinaryTreeADT<T> extends Iterable<T>{
   /**
    * Returns a reference to the root element
    *
@@ -58,6 +59,13 @@ public interface BinaryTreeADT<T>{
    */
   public String inOrder();
 
+  /**
+   * Performs the action for each element in an inorder traversal.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void inOrder(Consumer<? super T> action);
+
   /**
    * Returns the preorder traversal result.
    *
@@ -65,6 +73,13 @@ public interface BinaryTreeADT<T>{
    */
   public String preOrder();
 
+  /**
+   * Performs the action for each element in a preorder traversal.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void preOrder(Consumer<? super T> action);
+
   /**
    * Returns the postorder traversal result.
    *
@@ -72,10 +87,31 @@ public interface BinaryTreeADT<T>{
    */
   public String postOrder();
 
+  /**
+   * Performs the action for each element in a postorder traversal.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void postOrder(Consumer<? super T> action);
+
   /**
    * Returns the levelorder traversal result.
    *
    * @return the string representation of an levelorder traversal on this binary tree.
    */
   public String levelOrder();
+
+  /**
+   * Performs the action for each element in a levelorder traversal.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void levelOrder(Consumer<? super T> action);
+
+  /**
+   * Returns an iterator over the elements of this binary tree in inorder.
+   *
+   * @return an inorder iterator over the elements of this binary tree
+   */
+  public Iterator<T> iterator();
 }
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * BinaryTreeNode represents a node in a binary tree with a left and
  * right child.
@@ -6,6 +9,8 @@ public class BinaryTreeNode<T>{
   protected T element;
   protected BinaryTreeNode<T> left, right;
   protected int height = 0;
+  protected int size = 1;
+  protected int count = 1;   // occurrences of the element, in a multiset
 
   /**
    * Creates a new tree node with the specified data.
@@ -19,7 +24,8 @@ public class BinaryTreeNode<T>{
   }
 
   /**
-   * Returns the number of non-null children of this node.
+   * Returns the number of non-null children of this node (recursive).
+   * Trees that keep the size field up to date should read it instead.
    *
    * @return the integer number of non-null children of this node
    */
@@ -81,37 +87,77 @@ public class BinaryTreeNode<T>{
     left = node;
   }
 
+  /**
+   * Return the number of occurrences of the element held by this node,
+   * which is 1 unless the node belongs to a multiset tree.
+   *
+   * @return the number of occurrences of the element
+   */
+  public int getCount(){
+    return count;
+  }
+
   public String toString(){
-    return ""+element;
+    return (count == 1) ? ""+element : element + " (x" + count + ")";
   }
 
+  /**
+   * Returns a drawing of the subtree rooted at this node.
+   *
+   * @return a drawing of the subtree, one node per line
+   */
   public String print(){
-    String result = "";
+    StringBuilder result = new StringBuilder();
+    try{
+      print(result, Integer.MAX_VALUE);
+    }catch (IOException e){
+      throw new UncheckedIOException(e); // StringBuilder does not throw
+    }
+    return result.toString();
+  }
+
+  /**
+   * Writes a drawing of the subtree rooted at this node to the specified
+   * destination, line by line. Subtrees more than maxDepth levels below
+   * this node are summarized in a single line giving their number of
+   * elements.
+   *
+   * @param out the destination of the drawing
+   * @param maxDepth the depth of the deepest nodes to draw
+   * @throws IOException if writing to the destination fails
+   */
+  public void print(Appendable out, int maxDepth) throws IOException{
     if (right != null){
-      result += right.recPrint(true, "");
+      right.recPrint(out, true, "", 1, maxDepth);
     }
-    result += this+"\n";
+    out.append(String.valueOf(this)).append('\n');
     if (left != null){
-      result += left.recPrint(false, "");
+      left.recPrint(out, false, "", 1, maxDepth);
     }
-    return result;
   }
 
-  private String recPrint(boolean isRight, String indent) {
-    String result = "";
+  private void recPrint(Appendable out, boolean isRight, String indent,
+    int depth, int maxDepth) throws IOException{
+    if (depth > maxDepth){
+      out.append(indent).append(isRight ? " /" : " \\")
+         .append("----- ... (").append(String.valueOf(size))
+         .append(" more)\n");
+      return;
+    }
     if (right != null){
-      result += right.recPrint(true, indent + (isRight ? "        " : " |      "));
+      right.recPrint(out, true, indent + (isRight ? "        " : " |      "),
+        depth + 1, maxDepth);
     }
-    result += indent;
+    out.append(indent);
     if (isRight) {
-      result += " /";
+      out.append(" /");
     } else {
-      result += " \\";
+      out.append(" \\");
     }
-    result += "----- "+this+"\n";
+    out.append("----- ").append(String.valueOf(this)).append('\n');
     if (left != null) {
-      result += left.recPrint(false, indent + (isRight ? " |      " : "        "));
+      left.recPrint(out, false, indent + (isRight ? " |      " : "        "),
+        depth + 1, maxDepth);
     }
-    return result;
   }
 }
@@ -0,0 +1,66 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Codec defines how elements are written to and read from a ByteBuffer,
+ * for trees that keep their elements outside the Java heap or in files.
+ */
+public interface Codec<T>{
+  /**
+   * Codec for Long elements, 8 bytes each.
+   */
+  public static final Codec<Long> LONG = new Codec<Long>(){
+    public int width(){
+      return 8;
+    }
+
+    public void encode(Long element, ByteBuffer buffer){
+      buffer.putLong(element);
+    }
+
+    public Long decode(ByteBuffer buffer){
+      return buffer.getLong();
+    }
+  };
+
+  /**
+   * Codec for Integer elements, 4 bytes each.
+   */
+  public static final Codec<Integer> INTEGER = new Codec<Integer>(){
+    public int width(){
+      return 4;
+    }
+
+    public void encode(Integer element, ByteBuffer buffer){
+      buffer.putInt(element);
+    }
+
+    public Integer decode(ByteBuffer buffer){
+      return buffer.getInt();
+    }
+  };
+
+  /**
+   * Returns the number of bytes every encoded element takes, or -1 if the
+   * length varies from one element to another.
+   *
+   * @return the fixed width of an encoded element, or -1
+   */
+  public int width();
+
+  /**
+   * Writes the element at the current position of the buffer.
+   *
+   * @param element the element to encode
+   * @param buffer the buffer to write to
+   */
+  public void encode(T element, ByteBuffer buffer);
+
+  /**
+   * Reads an element at the current position of the buffer. A codec of
+   * variable width reads up to the limit of the buffer.
+   *
+   * @param buffer the buffer to read from
+   * @return the decoded element
+   */
+  public T decode(ByteBuffer buffer);
+}
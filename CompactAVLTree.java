@@ -0,0 +1,412 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * CompactAVLTree is an AVL tree of linked nodes that stores in each node
+ * only its balance factor, the height of its right subtree minus that of
+ * its left, in a single byte, instead of the height, subtree size and
+ * occurrence count kept by the nodes of a LinkedBinarySearchTree. With
+ * compressed references a node then takes 32 bytes instead of 40. The
+ * rotations update the balance factors directly, and an insertion or a
+ * removal stops climbing as soon as a subtree keeps its height.
+ *
+ * Without subtree sizes or heights there is no select, rank, join or
+ * split; those stay with LinkedBinarySearchTree. Note that equal elements
+ * are added to the right.
+ */
+public class CompactAVLTree<T> implements Iterable<T>{
+  // an AVL tree of 2^31 elements is less than 46 levels high
+  private static final int MAX_PATH = 64;
+
+  private CompactNode<T> root;
+  private int count;
+
+  // the search path of the current update, shared by all of them
+  private CompactNode<T>[] path = (CompactNode<T>[])new CompactNode[MAX_PATH];
+  private boolean[] wentLeft = new boolean[MAX_PATH];
+
+  /**
+   * CompactNode is a node holding an element, its two children and its
+   * balance factor.
+   */
+  private static class CompactNode<T>{
+    private T element;
+    private CompactNode<T> left, right;
+    private byte balance;
+
+    private CompactNode(T element){
+      this.element = element;
+    }
+  }
+
+  /**
+   * Creates an empty tree.
+   */
+  public CompactAVLTree(){
+  }
+
+  /**
+   * Returns true if this tree is empty and false otherwise.
+   *
+   * @return true if this tree is empty, false otherwise
+   */
+  public boolean isEmpty(){
+    return root == null;
+  }
+
+  /**
+   * Returns the number of elements in this tree.
+   *
+   * @return the number of elements in the tree
+   */
+  public int size(){
+    return count;
+  }
+
+  /**
+   * Returns the height of this tree, -1 if it is empty, found by walking
+   * down the taller side of each node.
+   *
+   * @return the height of the tree
+   */
+  public int getHeight(){
+    int height = -1;
+    CompactNode<T> current = root;
+    while (current != null){
+      height++;
+      current = (current.balance > 0) ? current.right : current.left;
+    }
+    return height;
+  }
+
+  /**
+   * Returns the estimated number of bytes the nodes of this tree take on
+   * the heap per element. The elements themselves are not included.
+   *
+   * @return the bytes taken by the nodes per element, 0 if the tree is empty
+   */
+  public double bytesPerElement(){
+    return isEmpty() ? 0 : Footprint.objectBytes(3, 1);
+  }
+
+  /**
+   * Adds the specified element to this tree. Note that equal elements are
+   * added to the right.
+   *
+   * @param element the element to be added
+   * @throws NonComparableElementException if the element is not comparable
+   */
+  public void addElement(T element){
+    if (!(element instanceof Comparable)){
+      throw new NonComparableElementException("CompactAVLTree");
+    }
+    int depth = 0;
+    CompactNode<T> current = root;
+    while (current != null){
+      path[depth] = current;
+      wentLeft[depth] = compare(element, current.element) < 0;
+      current = wentLeft[depth] ? current.left : current.right;
+      depth++;
+    }
+    root = retrace(depth, new CompactNode<T>(element), true);
+    count++;
+  }
+
+  /**
+   * Returns true if this tree contains an element equal to the target.
+   *
+   * @param targetElement the element being sought
+   * @return true if the element is in this tree
+   */
+  public boolean contains(T targetElement){
+    return findNode(targetElement) != null;
+  }
+
+  /**
+   * Returns the element of this tree equal to the target.
+   *
+   * @param targetElement the element being sought
+   * @return the matching element
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public T find(T targetElement) throws ElementNotFoundException{
+    CompactNode<T> node = findNode(targetElement);
+    if (node == null){
+      throw new ElementNotFoundException("CompactAVLTree");
+    }
+    return node.element;
+  }
+
+  /**
+   * Removes one occurrence of the specified element from this tree.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeElement(T targetElement) throws ElementNotFoundException{
+    int depth = 0;
+    CompactNode<T> current = root;
+    int comparison;
+    while (current != null
+        && (comparison = compare(targetElement, current.element)) != 0){
+      path[depth] = current;
+      wentLeft[depth] = comparison < 0;
+      current = wentLeft[depth] ? current.left : current.right;
+      depth++;
+    }
+    if (current == null){
+      throw new ElementNotFoundException("CompactAVLTree");
+    }
+    if (current.left != null && current.right != null){
+      // take the element of the inorder successor, and remove that instead
+      CompactNode<T> successor = current.right;
+      path[depth] = current;
+      wentLeft[depth] = false;
+      depth++;
+      while (successor.left != null){
+        path[depth] = successor;
+        wentLeft[depth] = true;
+        depth++;
+        successor = successor.left;
+      }
+      current.element = successor.element;
+      current = successor;
+    }
+    root = retrace(depth, (current.left != null) ? current.left : current.right,
+      false);
+    count--;
+  }
+
+  /**
+   * Removes and returns the smallest element in this tree.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMin() throws EmptyCollectionException{
+    return removeExtreme(true);
+  }
+
+  /**
+   * Removes and returns the largest element in this tree.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMax() throws EmptyCollectionException{
+    return removeExtreme(false);
+  }
+
+  /**
+   * Returns the smallest element in this tree without removing it.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMin() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("CompactAVLTree");
+    }
+    CompactNode<T> current = root;
+    while (current.left != null){
+      current = current.left;
+    }
+    return current.element;
+  }
+
+  /**
+   * Returns the largest element in this tree without removing it.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMax() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("CompactAVLTree");
+    }
+    CompactNode<T> current = root;
+    while (current.right != null){
+      current = current.right;
+    }
+    return current.element;
+  }
+
+  /**
+   * Removes all elements from this tree.
+   */
+  public void clear(){
+    root = null;
+    count = 0;
+  }
+
+  /**
+   * Returns an iterator over the elements of this tree in ascending order.
+   *
+   * @return an iterator over the elements in ascending order
+   */
+  public Iterator<T> iterator(){
+    CompactNode<T>[] stack = (CompactNode<T>[])new CompactNode[getHeight() + 1];
+    return new Iterator<T>(){
+      private int depth = pushAll(stack, 0, root);
+
+      public boolean hasNext(){
+        return depth > 0;
+      }
+
+      public T next(){
+        if (depth == 0){
+          throw new NoSuchElementException();
+        }
+        CompactNode<T> node = stack[--depth];
+        stack[depth] = null;
+        depth = pushAll(stack, depth, node.right);
+        return node.element;
+      }
+    };
+  }
+
+  /**
+   * Returns a string of the elements of this tree in ascending order.
+   *
+   * @return the elements in ascending order
+   */
+  public String toString(){
+    StringBuilder result = new StringBuilder();
+    for (T element : this){
+      result.append(element);
+    }
+    return result.toString();
+  }
+
+  private static <T> int pushAll(CompactNode<T>[] stack, int depth,
+    CompactNode<T> node){
+    while (node != null){
+      stack[depth++] = node;
+      node = node.left;
+    }
+    return depth;
+  }
+
+  private int compare(T a, T b){
+    return ((Comparable<T>)a).compareTo(b);
+  }
+
+  private CompactNode<T> findNode(T targetElement){
+    CompactNode<T> current = root;
+    while (current != null){
+      int comparison = compare(targetElement, current.element);
+      if (comparison == 0){
+        return current;
+      }
+      current = (comparison < 0) ? current.left : current.right;
+    }
+    return null;
+  }
+
+  private T removeExtreme(boolean min){
+    if (isEmpty()){
+      throw new EmptyCollectionException("CompactAVLTree");
+    }
+    int depth = 0;
+    CompactNode<T> current = root;
+    CompactNode<T> next = min ? current.left : current.right;
+    while (next != null){
+      path[depth] = current;
+      wentLeft[depth] = min;
+      depth++;
+      current = next;
+      next = min ? current.left : current.right;
+    }
+    root = retrace(depth, min ? current.right : current.left, false);
+    count--;
+    return current.element;
+  }
+
+  /**
+   * Walks back up path[0 .. depth - 1] after the subtree below it has been
+   * replaced by "child", which is one level higher (grew) or lower than the
+   * old one. Each balance factor on the way moves by one towards the side
+   * that changed, and the walk stops at the first subtree that keeps its
+   * height, rotating it first if it has become unbalanced.
+   *
+   * @param depth the number of nodes on the path
+   * @param child the replacement for the subtree below the path
+   * @param grew true after an insertion, false after a removal
+   * @return the new root of the tree
+   */
+  private CompactNode<T> retrace(int depth, CompactNode<T> child, boolean grew){
+    boolean changed = true;   // whether child differs in height from before
+    for (int i = depth - 1; i >= 0; i--){
+      CompactNode<T> parent = path[i];
+      if (wentLeft[i]){
+        parent.left = child;
+      }else{
+        parent.right = child;
+      }
+      if (!changed){
+        return path[0];
+      }
+      int balance = parent.balance + ((wentLeft[i] == grew) ? -1 : 1);
+      parent.balance = (byte)balance;
+      if (balance == 2 || balance == -2){
+        child = rebalance(parent);
+        // a rotation undoes the growth of an insertion, and shortens the
+        // subtree after a removal unless it leaves its root leaning
+        changed = !grew && child.balance == 0;
+      }else{
+        child = parent;
+        changed = grew ? (balance != 0) : (balance == 0);
+      }
+    }
+    return child;
+  }
+
+  private CompactNode<T> rebalance(CompactNode<T> node){
+    if (node.balance == -2){
+      if (node.left.balance <= 0){
+        node = singleRightRotation(node);
+      }else{
+        node = doubleLeftRightRotation(node);
+      }
+    }else if (node.balance == 2){
+      if (node.right.balance >= 0){
+        node = singleLeftRotation(node);
+      }else{
+        node = doubleRightLeftRotation(node);
+      }
+    }
+    return node;
+  }
+
+  // The balance factors after a rotation follow from those before it,
+  // whatever they are, so the double rotations can be made of two single
+  // ones.
+
+  private CompactNode<T> singleRightRotation(CompactNode<T> oldRoot){
+    CompactNode<T> newRoot = oldRoot.left;
+    oldRoot.left = newRoot.right;
+    newRoot.right = oldRoot;
+    oldRoot.balance = (byte)(oldRoot.balance + 1 - Math.min(newRoot.balance, 0));
+    newRoot.balance = (byte)(newRoot.balance + 1 + Math.max(oldRoot.balance, 0));
+    return newRoot;
+  }
+
+  private CompactNode<T> singleLeftRotation(CompactNode<T> oldRoot){
+    CompactNode<T> newRoot = oldRoot.right;
+    oldRoot.right = newRoot.left;
+    newRoot.left = oldRoot;
+    oldRoot.balance = (byte)(oldRoot.balance - 1 - Math.max(newRoot.balance, 0));
+    newRoot.balance = (byte)(newRoot.balance - 1 + Math.min(oldRoot.balance, 0));
+    return newRoot;
+  }
+
+  private CompactNode<T> doubleLeftRightRotation(CompactNode<T> oldRoot){
+    oldRoot.left = singleLeftRotation(oldRoot.left);
+    return singleRightRotation(oldRoot);
+  }
+
+  private CompactNode<T> doubleRightLeftRotation(CompactNode<T> oldRoot){
+    oldRoot.right = singleRightRotation(oldRoot.right);
+    return singleLeftRotation(oldRoot);
+  }
+}
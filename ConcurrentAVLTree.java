@@ -0,0 +1,1471 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * ConcurrentAVLTree is a binary search tree that many threads can search
+ * and update at once. It follows the relaxed-balance AVL tree of Bronson,
+ * Casper, Chafi and Olukotun ("A Practical Concurrent Binary Search Tree",
+ * PPoPP 2010):
+ *
+ * Searches take no locks. Every node carries a version number that a
+ * rotation bumps when the node's subtree loses keys; a search reads the
+ * version of each node before following its child link and checks it
+ * again afterwards, backing up to the last node whose version still holds
+ * if it changed. An update searches the same way and then locks only the
+ * node it links a new child to, or the node it removes and its parent.
+ * Heights are repaired and rotations made afterwards, one node at a time,
+ * each holding the locks of a parent and one or two of its children, so
+ * the tree may be briefly out of balance while updates are in flight.
+ *
+ * A node holds every occurrence of its element, counting them. A node
+ * whose count drops to zero while it has two children stays in the tree
+ * as a routing node, and is unlinked once it has lost one of them.
+ *
+ * size() and isEmpty() read a counter. Iteration, the traversals, select
+ * and rank are weakly consistent: they never fail because of concurrent
+ * updates, and they reflect each element as it was at some point during
+ * the call.
+ */
+public class ConcurrentAVLTree<T> implements BinarySearchTreeADT<T>{
+  // a failed validation; the search backs up and tries again
+  private static final Object RETRY = new Object();
+
+  // version numbers, see Node.version
+  private static final long UNLINKED = 1L;
+  private static final long SHRINKING = 2L;
+  private static final long SHRINK_COUNT = 4L;
+
+  // results of condition(node) that are not a height
+  private static final int UNLINK_REQUIRED = -1;
+  private static final int REBALANCE_REQUIRED = -2;
+  private static final int NOTHING_REQUIRED = -3;
+
+  // changes of count that remove occurrences
+  private static final int REMOVE_ONE = -1;
+  private static final int REMOVE_ALL = Integer.MIN_VALUE;
+
+  private static final int SPIN_COUNT = 100;
+
+  // the root is the right child of the holder, so it has a parent to lock
+  private final Node<T> holder = new Node<T>(null, 0, null);
+  private final AtomicInteger count = new AtomicInteger();
+
+  /**
+   * Creates an empty tree.
+   */
+  public ConcurrentAVLTree(){
+    super();
+  }
+
+  /**
+   * Returns the element at the root of this tree. The root may be a
+   * routing node whose occurrences have all been removed.
+   *
+   * @return the element at the root
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T getRootElement() throws EmptyCollectionException{
+    Node<T> root = holder.right;
+    if (root == null){
+      throw new EmptyCollectionException("ConcurrentAVLTree");
+    }
+    return root.element;
+  }
+
+  /**
+   * Returns true if this tree holds no elements.
+   *
+   * @return true if the tree is empty
+   */
+  public boolean isEmpty(){
+    return count.get() == 0;
+  }
+
+  /**
+   * Returns the number of elements in this tree, counting each occurrence.
+   *
+   * @return the number of elements
+   */
+  public int size(){
+    return count.get();
+  }
+
+  /**
+   * Returns true if this tree contains an element equal to the target.
+   * The search takes no locks.
+   *
+   * @param targetElement the element being sought
+   * @return true if the element is in the tree
+   */
+  public boolean contains(T targetElement){
+    return findNode(targetElement) != null;
+  }
+
+  /**
+   * Returns the element of this tree equal to the target. The search
+   * takes no locks.
+   *
+   * @param targetElement the element being sought
+   * @return the matching element
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public T find(T targetElement) throws ElementNotFoundException{
+    Node<T> node = findNode(targetElement);
+    if (node == null){
+      throw new ElementNotFoundException("ConcurrentAVLTree");
+    }
+    return node.element;
+  }
+
+  /**
+   * Adds the specified element to this tree. Note that an element equal to
+   * one already present is counted in the same node.
+   *
+   * @param element the element to be added
+   * @throws NonComparableElementException if the element is not comparable
+   */
+  public void addElement(T element){
+    if (!(element instanceof Comparable)){
+      throw new NonComparableElementException("ConcurrentAVLTree");
+    }
+    while (true){
+      Node<T> root = holder.right;
+      if (root == null){
+        if (insertIntoEmpty(element)){
+          break;
+        }
+      }else{
+        long version = root.version;
+        if (isShrinkingOrUnlinked(version)){
+          root.waitUntilChangeCompleted(version);
+        }else if (root == holder.right
+          && attemptUpdate(element, 1, holder, root, version) != RETRY){
+          break;
+        }
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * Removes one occurrence of the specified element from this tree.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeElement(T targetElement) throws ElementNotFoundException{
+    remove(targetElement, false);
+  }
+
+  /**
+   * Removes all occurrences of the specified element from this tree.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeAllOccurrences(T targetElement)
+    throws ElementNotFoundException{
+    remove(targetElement, true);
+  }
+
+  /**
+   * Returns the number of occurrences of the specified element, read from
+   * its node without taking locks.
+   *
+   * @param element the element to count
+   * @return the number of elements equal to the element
+   */
+  public int count(T element){
+    Node<T> node = findNode(element);
+    return (node == null) ? 0 : node.count;
+  }
+
+  /**
+   * Adds all the elements of the specified collection to this tree, in
+   * ascending order so that consecutive insertions follow nearly the same
+   * path through the cache. Each element is added on its own, so other
+   * threads may see part of the batch.
+   *
+   * @param elements the elements to be added
+   * @throws NonComparableElementException if an element is not comparable
+   */
+  public void addAll(Collection<T> elements){
+    for (T element : sortedBatch(elements)){
+      addElement(element);
+    }
+  }
+
+  /**
+   * Removes all occurrences of every element of the specified collection
+   * from this tree, in ascending order, ignoring the elements that are not
+   * in it. Each element is removed on its own.
+   *
+   * @param elements the elements to be removed
+   * @throws NonComparableElementException if an element is not comparable
+   */
+  public void removeAll(Collection<T> elements){
+    T previous = null;
+    for (T element : sortedBatch(elements)){
+      if (previous == null || ((Comparable<T>)previous).compareTo(element) != 0){
+        attemptRemove(element, true);
+      }
+      previous = element;
+    }
+  }
+
+  private T[] sortedBatch(Collection<T> elements){
+    Object[] batch = elements.toArray();
+    for (Object element : batch){
+      if (!(element instanceof Comparable)){
+        throw new NonComparableElementException("ConcurrentAVLTree");
+      }
+    }
+    Arrays.sort(batch);
+    return (T[])batch;
+  }
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive. See removeRange(T, T, Consumer).
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement){
+    return removeRange(fromElement, toElement, null);
+  }
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, passing each of them to evicted in ascending order. There
+   * is no way to cut a subtree out without locking all of it, so the
+   * elements are removed one at a time, in O(k log n) time for k elements;
+   * other threads may see part of the range gone, and elements they add to
+   * it meanwhile may stay.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement,
+    Consumer<? super T> evicted){
+    if (((Comparable<T>)fromElement).compareTo(toElement) > 0){
+      throw new IllegalArgumentException(fromElement + " is greater than "
+        + toElement);
+    }
+    return removeBetween(fromElement, toElement, evicted);
+  }
+
+  /**
+   * Removes the elements less than toElement, one at a time.
+   *
+   * @param toElement the bound, exclusive
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement){
+    return removeBetween(null, toElement, null);
+  }
+
+  /**
+   * Removes the elements less than toElement, one at a time, passing each
+   * of them to evicted in ascending order.
+   *
+   * @param toElement the bound, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement, Consumer<? super T> evicted){
+    return removeBetween(null, toElement, evicted);
+  }
+
+  /**
+   * Removes the elements greater than or equal to fromElement, one at a
+   * time.
+   *
+   * @param fromElement the bound, inclusive
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement){
+    return removeBetween(fromElement, null, null);
+  }
+
+  /**
+   * Removes the elements greater than or equal to fromElement, one at a
+   * time, passing each of them to evicted in ascending order.
+   *
+   * @param fromElement the bound, inclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement, Consumer<? super T> evicted){
+    return removeBetween(fromElement, null, evicted);
+  }
+
+  /**
+   * Removes all occurrences of each element from fromElement up to
+   * toElement, exclusive, in ascending order. A null bound stands for no
+   * bound.
+   */
+  private int removeBetween(T fromElement, T toElement,
+    Consumer<? super T> evicted){
+    int removed = 0;
+    Node<T> node = navigate(fromElement, true, true);
+    while (node != null && (toElement == null
+        || ((Comparable<T>)node.element).compareTo(toElement) < 0)){
+      T element = node.element;
+      int occurrences = attemptRemove(element, true);
+      removed = removed + occurrences;
+      if (evicted != null){
+        for (int i = 0; i < occurrences; i++){
+          evicted.accept(element);
+        }
+      }
+      node = navigate(element, true, false);
+    }
+    return removed;
+  }
+
+  /**
+   * Removes and returns the smallest element of this tree.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMin() throws EmptyCollectionException{
+    return removeExtreme(false);
+  }
+
+  /**
+   * Removes and returns the largest element of this tree.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMax() throws EmptyCollectionException{
+    return removeExtreme(true);
+  }
+
+  /**
+   * Returns the smallest element of this tree.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMin() throws EmptyCollectionException{
+    Node<T> node = navigate(null, true, false);
+    if (node == null){
+      throw new EmptyCollectionException("ConcurrentAVLTree");
+    }
+    return node.element;
+  }
+
+  /**
+   * Returns the largest element of this tree.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMax() throws EmptyCollectionException{
+    Node<T> node = navigate(null, false, false);
+    if (node == null){
+      throw new EmptyCollectionException("ConcurrentAVLTree");
+    }
+    return node.element;
+  }
+
+  /**
+   * Returns the element with the specified 0-based position in ascending
+   * order. The nodes do not keep subtree sizes, which could not be
+   * updated without locking every ancestor, so this walks the first k + 1
+   * elements.
+   *
+   * @param k the position of the element
+   * @return the element preceded by exactly k others
+   * @throws IndexOutOfBoundsException if there is no such position
+   */
+  public T select(int k) throws IndexOutOfBoundsException{
+    if (k >= 0){
+      Iterator<T> elements = iterator();
+      for (int i = 0; elements.hasNext(); i++){
+        T element = elements.next();
+        if (i == k){
+          return element;
+        }
+      }
+    }
+    throw new IndexOutOfBoundsException("Index: " + k);
+  }
+
+  /**
+   * Returns the number of elements less than the specified one, counting
+   * the elements from the smallest one up.
+   *
+   * @param element the element to rank
+   * @return the number of elements less than the element
+   */
+  public int rank(T element){
+    Comparable<T> comparableElement = (Comparable<T>)element;
+    int result = 0;
+    Iterator<T> elements = iterator();
+    while (elements.hasNext() && comparableElement.compareTo(elements.next()) > 0){
+      result++;
+    }
+    return result;
+  }
+
+  public T floor(T element){
+    return elementOf(navigate(element, false, true));
+  }
+
+  public T ceiling(T element){
+    return elementOf(navigate(element, true, true));
+  }
+
+  public T lower(T element){
+    return elementOf(navigate(element, false, false));
+  }
+
+  public T higher(T element){
+    return elementOf(navigate(element, true, false));
+  }
+
+  /**
+   * Returns the elements of this tree in ascending order.
+   *
+   * @return a string of the elements in ascending order
+   */
+  public String toString(){
+    StringBuilder result = new StringBuilder("[");
+    inOrder(element -> {
+      if (result.length() > 1){
+        result.append(", ");
+      }
+      result.append(element);
+    });
+    return result.append("]").toString();
+  }
+
+  public String inOrder(){
+    StringBuilder result = new StringBuilder();
+    inOrder(element -> result.append(element));
+    return result.toString();
+  }
+
+  /**
+   * Performs the action for each element in ascending order, as the
+   * iterator returns them.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void inOrder(Consumer<? super T> action){
+    iterator().forEachRemaining(action);
+  }
+
+  public String preOrder(){
+    StringBuilder result = new StringBuilder();
+    preOrder(element -> result.append(element));
+    return result.toString();
+  }
+
+  /**
+   * Performs the action for each element in a preorder traversal of the
+   * links as they are read. A rotation made during the walk can make it
+   * miss or repeat the elements it moves.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void preOrder(Consumer<? super T> action){
+    ArrayDeque<Node<T>> pending = new ArrayDeque<Node<T>>();
+    push(pending, holder.right);
+    while (!pending.isEmpty()){
+      Node<T> current = pending.pop();
+      visit(current, action);
+      push(pending, current.right);
+      push(pending, current.left);
+    }
+  }
+
+  public String postOrder(){
+    StringBuilder result = new StringBuilder();
+    postOrder(element -> result.append(element));
+    return result.toString();
+  }
+
+  /**
+   * Performs the action for each element in a postorder traversal of the
+   * links as they are read. A rotation made during the walk can make it
+   * miss or repeat the elements it moves.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void postOrder(Consumer<? super T> action){
+    // a reversed preorder that visits right before left
+    ArrayDeque<Node<T>> pending = new ArrayDeque<Node<T>>();
+    ArrayDeque<Node<T>> visited = new ArrayDeque<Node<T>>();
+    push(pending, holder.right);
+    while (!pending.isEmpty()){
+      Node<T> current = pending.pop();
+      visited.push(current);
+      push(pending, current.left);
+      push(pending, current.right);
+    }
+    while (!visited.isEmpty()){
+      visit(visited.pop(), action);
+    }
+  }
+
+  public String levelOrder(){
+    StringBuilder result = new StringBuilder();
+    levelOrder(element -> result.append(element));
+    return result.toString();
+  }
+
+  /**
+   * Performs the action for each element in a levelorder traversal of the
+   * links as they are read. A rotation made during the walk can make it
+   * miss or repeat the elements it moves.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void levelOrder(Consumer<? super T> action){
+    ArrayDeque<Node<T>> nodes = new ArrayDeque<Node<T>>();
+    if (holder.right != null){
+      nodes.add(holder.right);
+    }
+    while (!nodes.isEmpty()){
+      Node<T> current = nodes.remove();
+      visit(current, action);
+      Node<T> left = current.left, right = current.right;
+      if (left != null){
+        nodes.add(left);
+      }
+      if (right != null){
+        nodes.add(right);
+      }
+    }
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the elements of this tree in
+   * ascending order. Each step searches for the next larger element, so
+   * the iterator never fails, never goes back, and returns every element
+   * that stays in the tree while it runs. Removal through the iterator
+   * removes one occurrence of the last element returned.
+   *
+   * @return an iterator over the elements in ascending order
+   */
+  public Iterator<T> iterator(){
+    return new TreeIterator();
+  }
+
+  private static <T> void push(ArrayDeque<Node<T>> pending, Node<T> node){
+    if (node != null){
+      pending.push(node);
+    }
+  }
+
+  private static <T> void visit(Node<T> node, Consumer<? super T> action){
+    for (int i = node.count; i > 0; i--){
+      action.accept(node.element);
+    }
+  }
+
+  private static <T> T elementOf(Node<T> node){
+    return (node == null) ? null : node.element;
+  }
+
+  private Node<T> findNode(T targetElement){
+    Node<T> node = navigate(targetElement, true, true);
+    if (node == null
+      || ((Comparable<T>)targetElement).compareTo(node.element) != 0){
+      return null;
+    }
+    return node;
+  }
+
+  private T removeExtreme(boolean max){
+    while (true){
+      Node<T> node = navigate(null, !max, false);
+      if (node == null){
+        throw new EmptyCollectionException("ConcurrentAVLTree");
+      }
+      if (attemptRemove(node.element, false) != 0){
+        return node.element;
+      }
+      // another thread removed it first
+    }
+  }
+
+  private void remove(T targetElement, boolean all){
+    if (attemptRemove(targetElement, all) == 0){
+      throw new ElementNotFoundException("ConcurrentAVLTree");
+    }
+  }
+
+  /**
+   * Removes one or all occurrences of the element, returning the number
+   * removed, 0 if there were none.
+   */
+  private int attemptRemove(T element, boolean all){
+    int change = all ? REMOVE_ALL : REMOVE_ONE;
+    while (true){
+      Node<T> root = holder.right;
+      if (root == null){
+        return 0;
+      }
+      long version = root.version;
+      if (isShrinkingOrUnlinked(version)){
+        root.waitUntilChangeCompleted(version);
+      }else if (root == holder.right){
+        Object result = attemptUpdate(element, change, holder, root, version);
+        if (result != RETRY){
+          int occurrences = (Integer)result;
+          count.addAndGet(-occurrences);
+          return occurrences;
+        }
+      }
+    }
+  }
+
+  private boolean insertIntoEmpty(T element){
+    synchronized (holder){
+      if (holder.right == null){
+        holder.right = new Node<T>(element, 1, holder);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  //====================================================================
+  // Searching
+
+  /**
+   * Returns the node of the nearest element above (or below) the specified
+   * one, or equal to it if inclusive. A null element stands for minus
+   * infinity when searching above and plus infinity when searching below.
+   *
+   * @return the node found, or null if there is none
+   */
+  private Node<T> navigate(T element, boolean above, boolean inclusive){
+    while (true){
+      Node<T> root = holder.right;
+      if (root == null){
+        return null;
+      }
+      long version = root.version;
+      if (isShrinkingOrUnlinked(version)){
+        root.waitUntilChangeCompleted(version);
+      }else if (root == holder.right){
+        Object result = attemptNavigate(element, above, inclusive, root, version);
+        if (result != RETRY){
+          return (Node<T>)result;
+        }
+      }
+    }
+  }
+
+  /**
+   * Searches the subtree of a node whose version was read as given, first
+   * on the side of the element, then the node itself, then the far side.
+   */
+  private Object attemptNavigate(T element, boolean above, boolean inclusive,
+    Node<T> node, long version){
+    int comparison;
+    if (element == null){
+      comparison = above ? -1 : 1;
+    }else{
+      comparison = ((Comparable<T>)element).compareTo(node.element);
+    }
+    if (comparison == 0){
+      if (inclusive && node.count > 0){
+        return node;
+      }
+      // the nearest element is the extreme one on the far side
+      return attemptDescend(null, above, inclusive, node, version, !above);
+    }
+    boolean goLeft = comparison < 0;
+    if (goLeft != above){
+      // everything on the near side of the node is too far
+      return attemptDescend(element, above, inclusive, node, version, goLeft);
+    }
+    Object result = attemptDescend(element, above, inclusive, node, version,
+      goLeft);
+    if (result != null){
+      return result;
+    }
+    if (node.count > 0){
+      return hasShrunkOrUnlinked(version, node.version) ? RETRY : node;
+    }
+    return attemptDescend(null, above, inclusive, node, version, !above);
+  }
+
+  /**
+   * Searches one subtree of a node, validating the node's version around
+   * every read of the child link and again before returning what the child
+   * found, since a rotation may have lifted the child above the node in
+   * the meantime. Returns RETRY only if the node itself has changed since
+   * its version was read.
+   */
+  private Object attemptDescend(T element, boolean above, boolean inclusive,
+    Node<T> node, long version, boolean goLeft){
+    while (true){
+      Node<T> child = node.child(goLeft);
+      if (child == null){
+        return hasShrunkOrUnlinked(version, node.version) ? RETRY : null;
+      }
+      long childVersion = child.version;
+      if (isShrinkingOrUnlinked(childVersion)){
+        child.waitUntilChangeCompleted(childVersion);
+        if (hasShrunkOrUnlinked(version, node.version)){
+          return RETRY;
+        }
+      }else if (child != node.child(goLeft)){
+        if (hasShrunkOrUnlinked(version, node.version)){
+          return RETRY;
+        }
+      }else{
+        if (hasShrunkOrUnlinked(version, node.version)){
+          return RETRY;
+        }
+        Object result = attemptNavigate(element, above, inclusive, child,
+          childVersion);
+        if (hasShrunkOrUnlinked(version, node.version)){
+          return RETRY;
+        }
+        if (result != RETRY){
+          return result;
+        }
+        // the child changed under us; read the link again
+      }
+    }
+  }
+
+  //====================================================================
+  // Updating
+
+  /**
+   * Adds occurrences of the element to the subtree of a node (change > 0),
+   * or removes one (REMOVE_ONE) or all (REMOVE_ALL) of them. Returns
+   * RETRY, or the number of occurrences removed.
+   */
+  private Object attemptUpdate(T element, int change, Node<T> parent,
+    Node<T> node, long version){
+    int comparison = ((Comparable<T>)element).compareTo(node.element);
+    if (comparison == 0){
+      return attemptNodeUpdate(change, parent, node);
+    }
+    boolean goLeft = comparison < 0;
+    while (true){
+      Node<T> child = node.child(goLeft);
+      if (hasShrunkOrUnlinked(version, node.version)){
+        return RETRY;
+      }
+      if (child == null){
+        if (change < 0){
+          return 0;   // nothing to remove
+        }
+        boolean inserted;
+        Node<T> damaged = null;
+        synchronized (node){
+          if (hasShrunkOrUnlinked(version, node.version)){
+            return RETRY;
+          }
+          // another insertion may have got here first
+          inserted = (node.child(goLeft) == null);
+          if (inserted){
+            node.setChild(goLeft, new Node<T>(element, change, node));
+            damaged = fixHeight(node);
+          }
+        }
+        if (inserted){
+          fixHeightAndRebalance(node, damaged);
+          return 0;
+        }
+      }else{
+        long childVersion = child.version;
+        if (isShrinkingOrUnlinked(childVersion)){
+          child.waitUntilChangeCompleted(childVersion);
+        }else if (child != node.child(goLeft)){
+          // the link changed; read it again
+        }else{
+          if (hasShrunkOrUnlinked(version, node.version)){
+            return RETRY;
+          }
+          Object result = attemptUpdate(element, change, node, child,
+            childVersion);
+          if (result != RETRY){
+            return result;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Changes the count of a node found to hold the element, unlinking the
+   * node if its count drops to zero and it has at most one child.
+   */
+  private Object attemptNodeUpdate(int change, Node<T> parent, Node<T> node){
+    if (change > 0){
+      synchronized (node){
+        if (isUnlinked(node.version)){
+          return RETRY;
+        }
+        node.count += change;
+        return 0;
+      }
+    }
+    if (node.count == 0){
+      return 0;   // a routing node
+    }
+    if (node.left == null || node.right == null){
+      int removed;
+      Node<T> damaged;
+      synchronized (parent){
+        if (isUnlinked(parent.version) || node.parent != parent){
+          return RETRY;
+        }
+        synchronized (node){
+          removed = node.count;
+          if (removed == 0){
+            return 0;
+          }
+          if (removed > 1 && change == REMOVE_ONE){
+            node.count = removed - 1;
+            return 1;
+          }
+          if (!attemptUnlink(parent, node)){
+            return RETRY;
+          }
+        }
+        damaged = fixHeight(parent);
+      }
+      fixHeightAndRebalance(parent, damaged);
+      return removed;
+    }
+    synchronized (node){
+      if (isUnlinked(node.version)){
+        return RETRY;
+      }
+      int removed = node.count;
+      if (removed == 0){
+        return 0;
+      }
+      if (removed > 1 && change == REMOVE_ONE){
+        node.count = removed - 1;
+        return 1;
+      }
+      if (node.left == null || node.right == null){
+        // it could be unlinked now, which needs the parent's lock
+        return RETRY;
+      }
+      node.count = 0;   // leave it as a routing node
+      return removed;
+    }
+  }
+
+  /**
+   * Unlinks a node with at most one child from its parent, both locked.
+   * Returns false if the node is no longer a child of the parent or has
+   * gained a second child.
+   */
+  private boolean attemptUnlink(Node<T> parent, Node<T> node){
+    Node<T> parentLeft = parent.left;
+    Node<T> parentRight = parent.right;
+    if (parentLeft != node && parentRight != node){
+      return false;
+    }
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+    if (left != null && right != null){
+      return false;
+    }
+    Node<T> splice = (left != null) ? left : right;
+    if (parentLeft == node){
+      parent.left = splice;
+    }else{
+      parent.right = splice;
+    }
+    if (splice != null){
+      splice.parent = parent;
+    }
+    node.version = UNLINKED;
+    node.count = 0;
+    return true;
+  }
+
+  //====================================================================
+  // Rebalancing
+
+  private static int height(Node<?> node){
+    return (node == null) ? 0 : node.height;
+  }
+
+  /**
+   * Returns what the node needs: to be unlinked, to be rotated, nothing,
+   * or a new height, which is returned.
+   */
+  private int condition(Node<T> node){
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+    if ((left == null || right == null) && node.count == 0){
+      return UNLINK_REQUIRED;
+    }
+    int heightLeft = height(left);
+    int heightRight = height(right);
+    int newHeight = 1 + Math.max(heightLeft, heightRight);
+    int balance = heightLeft - heightRight;
+    if (balance < -1 || balance > 1){
+      return REBALANCE_REQUIRED;
+    }
+    return (node.height != newHeight) ? newHeight : NOTHING_REQUIRED;
+  }
+
+  /**
+   * Repairs the height of a locked node, returning the next node that may
+   * need attention or null.
+   */
+  private Node<T> fixHeight(Node<T> node){
+    int condition = condition(node);
+    switch (condition){
+      case REBALANCE_REQUIRED:
+      case UNLINK_REQUIRED:
+        return node;
+      case NOTHING_REQUIRED:
+        return null;
+      default:
+        node.height = condition;
+        return node.parent;
+    }
+  }
+
+  /**
+   * Walks up from a damaged node, repairing heights, unlinking routing
+   * nodes and rotating, until a node needs nothing. A rotation can leave
+   * a damaged node below it as well as stale heights above it, so once
+   * one has been made the walk goes on up to the root.
+   *
+   * A height may be computed from the height of a child that another
+   * thread is changing, so the walk only stops at a node while holding its
+   * lock: the thread that locks it last sees the latest heights below it.
+   * A rotation may also move the child the walk came up from, without that
+   * child's lock, so the walk checks under the lock that it is still there
+   * and otherwise follows it to its new parent. Every height written is
+   * thus checked again from above, and once updates stop no stored height
+   * is stale. "repaired" is the node whose height the caller has just
+   * repaired, and "node" the one fixHeight() returned for it.
+   */
+  private void fixHeightAndRebalance(Node<T> repaired, Node<T> node){
+    // the child the walk came up from, if its height was changed
+    Node<T> from = (node != repaired) ? repaired : null;
+    boolean restructured = false;
+    while (node != null && node.parent != null){
+      if (isUnlinked(node.version)){
+        if (from == null || isUnlinked(from.version)){
+          return;
+        }
+        // a routing node unlinked above the child; the child hangs from
+        // the routing node's parent now
+        node = from.parent;
+        continue;
+      }
+      int condition = condition(node);
+      if (condition == UNLINK_REQUIRED || condition == REBALANCE_REQUIRED){
+        Node<T> parent = node.parent;
+        synchronized (parent){
+          if (!isUnlinked(parent.version) && node.parent == parent){
+            synchronized (node){
+              Node<T> next = rebalance(parent, node);
+              restructured = true;
+              if (next == null){
+                from = node;
+                node = parent;
+              }else{
+                from = (next == parent.parent) ? parent : null;
+                node = next;
+              }
+            }
+          }
+          // otherwise look at the node again
+        }
+      }else{
+        synchronized (node){
+          if (from != null && from.parent != node && !isUnlinked(from.version)){
+            // a rotation has moved the child the walk came up from
+            node = from.parent;
+            continue;
+          }
+          Node<T> next = fixHeight(node);
+          if (next == node){
+            // it needs a rotation or an unlink after all
+            from = null;
+          }else if (next == null){
+            if (!restructured){
+              return;
+            }
+            from = null;
+            node = node.parent;
+          }else{
+            from = node;
+            node = next;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Unlinks or rotates a node whose parent is locked along with it,
+   * returning the next node that may need attention.
+   */
+  private Node<T> rebalance(Node<T> parent, Node<T> node){
+    Node<T> left = node.left;
+    Node<T> right = node.right;
+    if ((left == null || right == null) && node.count == 0){
+      return attemptUnlink(parent, node) ? fixHeight(parent) : node;
+    }
+    int heightLeft = height(left);
+    int heightRight = height(right);
+    int newHeight = 1 + Math.max(heightLeft, heightRight);
+    int balance = heightLeft - heightRight;
+    if (balance > 1){
+      return rebalanceToRight(parent, node, left, heightRight);
+    }else if (balance < -1){
+      return rebalanceToLeft(parent, node, right, heightLeft);
+    }else if (newHeight != node.height){
+      node.height = newHeight;
+      return fixHeight(parent);
+    }
+    return null;
+  }
+
+  private Node<T> rebalanceToRight(Node<T> parent, Node<T> node,
+    Node<T> left, int heightRight){
+    synchronized (left){
+      if (left.height - heightRight <= 1){
+        return node;   // changed since it was read; look again
+      }
+      Node<T> leftRight = left.right;
+      int heightLeftLeft = height(left.left);
+      int heightLeftRight = height(leftRight);
+      if (heightLeftLeft >= heightLeftRight){
+        return rotateRight(parent, node, left, heightRight, heightLeftLeft,
+          leftRight, heightLeftRight);
+      }
+      synchronized (leftRight){
+        heightLeftRight = leftRight.height;
+        if (heightLeftLeft >= heightLeftRight){
+          return rotateRight(parent, node, left, heightRight, heightLeftLeft,
+            leftRight, heightLeftRight);
+        }
+        int heightLeftRightLeft = height(leftRight.left);
+        int balance = heightLeftLeft - heightLeftRightLeft;
+        if (balance >= -1 && balance <= 1){
+          return rotateRightOverLeft(parent, node, left, heightRight,
+            heightLeftLeft, leftRight, heightLeftRightLeft);
+        }
+      }
+      // the double rotation would leave the left child unbalanced
+      return rebalanceToLeft(node, left, leftRight, heightLeftLeft);
+    }
+  }
+
+  private Node<T> rebalanceToLeft(Node<T> parent, Node<T> node,
+    Node<T> right, int heightLeft){
+    synchronized (right){
+      if (right.height - heightLeft <= 1){
+        return node;   // changed since it was read; look again
+      }
+      Node<T> rightLeft = right.left;
+      int heightRightRight = height(right.right);
+      int heightRightLeft = height(rightLeft);
+      if (heightRightRight >= heightRightLeft){
+        return rotateLeft(parent, node, right, heightLeft, heightRightRight,
+          rightLeft, heightRightLeft);
+      }
+      synchronized (rightLeft){
+        heightRightLeft = rightLeft.height;
+        if (heightRightRight >= heightRightLeft){
+          return rotateLeft(parent, node, right, heightLeft, heightRightRight,
+            rightLeft, heightRightLeft);
+        }
+        int heightRightLeftRight = height(rightLeft.right);
+        int balance = heightRightRight - heightRightLeftRight;
+        if (balance >= -1 && balance <= 1){
+          return rotateLeftOverRight(parent, node, right, heightLeft,
+            heightRightRight, rightLeft, heightRightLeftRight);
+        }
+      }
+      // the double rotation would leave the right child unbalanced
+      return rebalanceToRight(node, right, rightLeft, heightRightRight);
+    }
+  }
+
+  private Node<T> rotateRight(Node<T> parent, Node<T> node, Node<T> left,
+    int heightRight, int heightLeftLeft, Node<T> leftRight,
+    int heightLeftRight){
+    long version = node.version;
+    Node<T> parentLeft = parent.left;
+
+    node.version = beginShrink(version);
+    node.left = leftRight;
+    if (leftRight != null){
+      leftRight.parent = node;
+    }
+    left.right = node;
+    node.parent = left;
+    if (parentLeft == node){
+      parent.left = left;
+    }else{
+      parent.right = left;
+    }
+    left.parent = parent;
+
+    int newHeight = 1 + Math.max(heightLeftRight, heightRight);
+    node.height = newHeight;
+    left.height = 1 + Math.max(heightLeftLeft, newHeight);
+    node.version = endShrink(version);
+
+    int balance = heightLeftRight - heightRight;
+    if (balance < -1 || balance > 1){
+      return node;
+    }
+    if ((leftRight == null || heightRight == 0) && node.count == 0){
+      return node;
+    }
+    int balanceLeft = heightLeftLeft - newHeight;
+    if (balanceLeft < -1 || balanceLeft > 1){
+      return left;
+    }
+    if (heightLeftLeft == 0 && left.count == 0){
+      return left;
+    }
+    return fixHeight(parent);
+  }
+
+  private Node<T> rotateLeft(Node<T> parent, Node<T> node, Node<T> right,
+    int heightLeft, int heightRightRight, Node<T> rightLeft,
+    int heightRightLeft){
+    long version = node.version;
+    Node<T> parentLeft = parent.left;
+
+    node.version = beginShrink(version);
+    node.right = rightLeft;
+    if (rightLeft != null){
+      rightLeft.parent = node;
+    }
+    right.left = node;
+    node.parent = right;
+    if (parentLeft == node){
+      parent.left = right;
+    }else{
+      parent.right = right;
+    }
+    right.parent = parent;
+
+    int newHeight = 1 + Math.max(heightLeft, heightRightLeft);
+    node.height = newHeight;
+    right.height = 1 + Math.max(newHeight, heightRightRight);
+    node.version = endShrink(version);
+
+    int balance = heightRightLeft - heightLeft;
+    if (balance < -1 || balance > 1){
+      return node;
+    }
+    if ((rightLeft == null || heightLeft == 0) && node.count == 0){
+      return node;
+    }
+    int balanceRight = heightRightRight - newHeight;
+    if (balanceRight < -1 || balanceRight > 1){
+      return right;
+    }
+    if (heightRightRight == 0 && right.count == 0){
+      return right;
+    }
+    return fixHeight(parent);
+  }
+
+  private Node<T> rotateRightOverLeft(Node<T> parent, Node<T> node,
+    Node<T> left, int heightRight, int heightLeftLeft, Node<T> leftRight,
+    int heightLeftRightLeft){
+    long version = node.version;
+    long leftVersion = left.version;
+    Node<T> parentLeft = parent.left;
+    Node<T> leftRightLeft = leftRight.left;
+    Node<T> leftRightRight = leftRight.right;
+    int heightLeftRightRight = height(leftRightRight);
+
+    node.version = beginShrink(version);
+    left.version = beginShrink(leftVersion);
+    node.left = leftRightRight;
+    if (leftRightRight != null){
+      leftRightRight.parent = node;
+    }
+    left.right = leftRightLeft;
+    if (leftRightLeft != null){
+      leftRightLeft.parent = left;
+    }
+    leftRight.left = left;
+    left.parent = leftRight;
+    leftRight.right = node;
+    node.parent = leftRight;
+    if (parentLeft == node){
+      parent.left = leftRight;
+    }else{
+      parent.right = leftRight;
+    }
+    leftRight.parent = parent;
+
+    int newHeight = 1 + Math.max(heightLeftRightRight, heightRight);
+    node.height = newHeight;
+    int newLeftHeight = 1 + Math.max(heightLeftLeft, heightLeftRightLeft);
+    left.height = newLeftHeight;
+    leftRight.height = 1 + Math.max(newLeftHeight, newHeight);
+    node.version = endShrink(version);
+    left.version = endShrink(leftVersion);
+    if (left.count == 0 && (left.left == null || left.right == null)){
+      // a routing node left with one child; its new parent is locked too
+      attemptUnlink(leftRight, left);
+      newLeftHeight = height(leftRight.left);
+      leftRight.height = 1 + Math.max(newLeftHeight, newHeight);
+    }
+
+    int balance = heightLeftRightRight - heightRight;
+    if (balance < -1 || balance > 1){
+      return node;
+    }
+    if ((leftRightRight == null || heightRight == 0) && node.count == 0){
+      return node;
+    }
+    int balanceLeftRight = newLeftHeight - newHeight;
+    if (balanceLeftRight < -1 || balanceLeftRight > 1){
+      return leftRight;
+    }
+    return fixHeight(parent);
+  }
+
+  private Node<T> rotateLeftOverRight(Node<T> parent, Node<T> node,
+    Node<T> right, int heightLeft, int heightRightRight, Node<T> rightLeft,
+    int heightRightLeftRight){
+    long version = node.version;
+    long rightVersion = right.version;
+    Node<T> parentLeft = parent.left;
+    Node<T> rightLeftLeft = rightLeft.left;
+    Node<T> rightLeftRight = rightLeft.right;
+    int heightRightLeftLeft = height(rightLeftLeft);
+
+    node.version = beginShrink(version);
+    right.version = beginShrink(rightVersion);
+    node.right = rightLeftLeft;
+    if (rightLeftLeft != null){
+      rightLeftLeft.parent = node;
+    }
+    right.left = rightLeftRight;
+    if (rightLeftRight != null){
+      rightLeftRight.parent = right;
+    }
+    rightLeft.right = right;
+    right.parent = rightLeft;
+    rightLeft.left = node;
+    node.parent = rightLeft;
+    if (parentLeft == node){
+      parent.left = rightLeft;
+    }else{
+      parent.right = rightLeft;
+    }
+    rightLeft.parent = parent;
+
+    int newHeight = 1 + Math.max(heightLeft, heightRightLeftLeft);
+    node.height = newHeight;
+    int newRightHeight = 1 + Math.max(heightRightLeftRight, heightRightRight);
+    right.height = newRightHeight;
+    rightLeft.height = 1 + Math.max(newHeight, newRightHeight);
+    node.version = endShrink(version);
+    right.version = endShrink(rightVersion);
+    if (right.count == 0 && (right.left == null || right.right == null)){
+      // a routing node left with one child; its new parent is locked too
+      attemptUnlink(rightLeft, right);
+      newRightHeight = height(rightLeft.right);
+      rightLeft.height = 1 + Math.max(newHeight, newRightHeight);
+    }
+
+    int balance = heightRightLeftLeft - heightLeft;
+    if (balance < -1 || balance > 1){
+      return node;
+    }
+    if ((rightLeftLeft == null || heightLeft == 0) && node.count == 0){
+      return node;
+    }
+    int balanceRightLeft = newRightHeight - newHeight;
+    if (balanceRightLeft < -1 || balanceRightLeft > 1){
+      return rightLeft;
+    }
+    return fixHeight(parent);
+  }
+
+  /**
+   * Returns true if every node stores the height of its subtree and is in
+   * balance, and no routing node is left with fewer than two children.
+   * Only meaningful while no update is in flight.
+   *
+   * @return true if the tree is a valid AVL tree
+   */
+  boolean isBalanced(){
+    return checkedHeight(holder.right) >= 0;
+  }
+
+  /**
+   * Returns the height of the subtree, or -1 if a node in it is wrong.
+   */
+  private int checkedHeight(Node<T> node){
+    if (node == null){
+      return 0;
+    }
+    int heightLeft = checkedHeight(node.left);
+    int heightRight = checkedHeight(node.right);
+    if (heightLeft < 0 || heightRight < 0
+        || Math.abs(heightLeft - heightRight) > 1
+        || node.height != 1 + Math.max(heightLeft, heightRight)
+        || (node.count == 0 && (node.left == null || node.right == null))){
+      return -1;
+    }
+    return node.height;
+  }
+
+  //====================================================================
+  // Version numbers
+
+  private static boolean isChanging(long version){
+    return (version & SHRINKING) != 0;
+  }
+
+  private static boolean isUnlinked(long version){
+    return version == UNLINKED;
+  }
+
+  private static boolean isShrinkingOrUnlinked(long version){
+    return (version & (SHRINKING | UNLINKED)) != 0;
+  }
+
+  private static boolean hasShrunkOrUnlinked(long original, long current){
+    return original != current;
+  }
+
+  private static long beginShrink(long version){
+    return version | SHRINKING;
+  }
+
+  private static long endShrink(long version){
+    return version + SHRINK_COUNT;
+  }
+
+  /**
+   * Node is a node of a ConcurrentAVLTree. Its links, height and count
+   * change only while it is locked, but are read without locking.
+   */
+  private static final class Node<T>{
+    final T element;
+    volatile int count;      // occurrences; 0 for a routing node
+    volatile int height;     // 1 for a leaf
+    volatile Node<T> parent;
+    volatile Node<T> left, right;
+    // even, and increased by SHRINK_COUNT each time the subtree loses
+    // elements to a rotation; SHRINKING is set during the rotation, and
+    // the version becomes UNLINKED when the node leaves the tree
+    volatile long version;
+
+    Node(T element, int count, Node<T> parent){
+      this.element = element;
+      this.count = count;
+      this.height = 1;
+      this.parent = parent;
+    }
+
+    Node<T> child(boolean goLeft){
+      return goLeft ? left : right;
+    }
+
+    void setChild(boolean goLeft, Node<T> child){
+      if (goLeft){
+        left = child;
+      }else{
+        right = child;
+      }
+    }
+
+    /**
+     * Waits for a rotation that was shrinking this node, which holds its
+     * lock throughout, to finish.
+     */
+    void waitUntilChangeCompleted(long version){
+      if (!isChanging(version)){
+        return;
+      }
+      for (int tries = 0; tries < SPIN_COUNT; tries++){
+        if (this.version != version){
+          return;
+        }
+      }
+      synchronized (this){
+      }
+    }
+  }
+
+  /**
+   * TreeIterator returns the elements in ascending order by searching for
+   * the next element above the last one, repeating each element as many
+   * times as it occurred when its node was reached.
+   */
+  private class TreeIterator implements Iterator<T>{
+    private Node<T> next;
+    private int remaining;   // occurrences of next still to return
+    private T last;
+
+    public TreeIterator(){
+      advance(null);
+    }
+
+    private void advance(T from){
+      do{
+        next = navigate(from, true, false);
+        remaining = (next == null) ? 0 : next.count;
+        if (next != null){
+          from = next.element;
+        }
+      }while (next != null && remaining == 0);
+    }
+
+    public boolean hasNext(){
+      return next != null;
+    }
+
+    public T next(){
+      if (next == null){
+        throw new NoSuchElementException();
+      }
+      last = next.element;
+      if (--remaining == 0){
+        advance(last);
+      }
+      return last;
+    }
+
+    public void remove(){
+      if (last == null){
+        throw new IllegalStateException();
+      }
+      attemptRemove(last, false);
+      last = null;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrentAVLTreeTester measures the throughput of a ConcurrentAVLTree
+ * against a LinkedBinarySearchTree guarded by a single lock, for 1 to N
+ * threads running the same mix of searches, insertions and removals.
+ *
+ * With "check" as its first argument it instead checks that navigation,
+ * iteration and range removal give answers that were right at some moment
+ * of the call while other threads update the tree. Every SPACING-th key is
+ * an anchor that is added first and never removed; writers add and remove
+ * the keys between the anchors, and range removals clear the keys between
+ * two anchors. Whatever else happens, higher(x) must then lie above x and
+ * no higher than the next anchor, an iterator must never go back or skip
+ * an anchor, and a range removal must only evict keys of its range. Once
+ * all threads have stopped, the tree must be balanced with every stored
+ * height right.
+ *
+ * Usage: java ConcurrentAVLTreeTester [maxThreads [keyRange [millis [searchPercent]]]]
+ *        java ConcurrentAVLTreeTester check [threads [keyRange [millis]]]
+ */
+public class ConcurrentAVLTreeTester{
+  private static final int SPACING = 8;
+
+  /**
+   * Operations is the part of a tree the workload uses.
+   */
+  private interface Operations{
+    void add(int key);
+    void remove(int key);
+    boolean contains(int key);
+  }
+
+  /**
+   * The current tree with every operation synchronized on it.
+   */
+  private static class SynchronizedTree implements Operations{
+    private final LinkedBinarySearchTree<Integer> tree =
+      new LinkedBinarySearchTree<Integer>();
+
+    public synchronized void add(int key){
+      if (!tree.contains(key)){
+        tree.addElement(key);
+      }
+    }
+
+    public synchronized void remove(int key){
+      if (tree.contains(key)){
+        tree.removeElement(key);
+      }
+    }
+
+    public synchronized boolean contains(int key){
+      return tree.contains(key);
+    }
+  }
+
+  private static class ConcurrentTree implements Operations{
+    private final ConcurrentAVLTree<Integer> tree =
+      new ConcurrentAVLTree<Integer>();
+
+    public void add(int key){
+      if (!tree.contains(key)){
+        tree.addElement(key);
+      }
+    }
+
+    public void remove(int key){
+      if (tree.contains(key)){
+        try{
+          tree.removeElement(key);
+        }catch (ElementNotFoundException e){
+          // another thread removed it in between
+        }
+      }
+    }
+
+    public boolean contains(int key){
+      return tree.contains(key);
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException{
+    if (args.length > 0 && args[0].equals("check")){
+      int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+      int keyRange = (args.length > 2) ? Integer.parseInt(args[2]) : 30000;
+      long millis = (args.length > 3) ? Long.parseLong(args[3]) : 5000;
+      if (!check(threads, keyRange, millis)){
+        System.exit(1);
+      }
+      return;
+    }
+    int maxThreads = (args.length > 0) ? Integer.parseInt(args[0])
+      : Runtime.getRuntime().availableProcessors();
+    int keyRange = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+    long millis = (args.length > 2) ? Long.parseLong(args[2]) : 2000;
+    int searchPercent = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+
+    System.out.println("keys: " + keyRange + ", searches: " + searchPercent
+      + "%, " + millis + " ms per run");
+    System.out.println("threads  synchronized (ops/ms)  concurrent (ops/ms)");
+    for (int threads = 1; threads <= maxThreads; threads++){
+      double locked = run(new SynchronizedTree(), threads, keyRange, millis,
+        searchPercent);
+      double concurrent = run(new ConcurrentTree(), threads, keyRange, millis,
+        searchPercent);
+      System.out.printf("%7d  %22.1f  %19.1f%n", threads, locked, concurrent);
+    }
+  }
+
+  /**
+   * Fills the tree with half of the keys, then runs the workload on the
+   * specified number of threads and returns the operations per millisecond.
+   */
+  private static double run(Operations tree, int threads, int keyRange,
+    long millis, int searchPercent) throws InterruptedException{
+    Random random = new Random(42);
+    for (int i = 0; i < keyRange / 2; i++){
+      tree.add(random.nextInt(keyRange));
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong operations = new AtomicLong();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++){
+      long seed = t;
+      workers[t] = new Thread(() -> {
+        Random local = new Random(seed);
+        long done = 0;
+        try{
+          start.await();
+        }catch (InterruptedException e){
+          return;
+        }
+        while (running.get()){
+          int key = local.nextInt(keyRange);
+          int operation = local.nextInt(100);
+          if (operation < searchPercent){
+            tree.contains(key);
+          }else if ((operation & 1) == 0){
+            tree.add(key);
+          }else{
+            tree.remove(key);
+          }
+          done++;
+        }
+        operations.addAndGet(done);
+      });
+      workers[t].start();
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    Thread.sleep(millis);
+    running.set(false);
+    for (Thread worker : workers){
+      worker.join();
+    }
+    double elapsed = (System.nanoTime() - begin) / 1e6;
+    return operations.get() / elapsed;
+  }
+
+  /**
+   * Runs writers, a range remover and readers against one tree for the
+   * specified time, and returns true if no reader or remover saw an answer
+   * that could not have been right at any moment of its call.
+   */
+  private static boolean check(int threads, int keyRange, long millis)
+    throws InterruptedException{
+    ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+    int blocks = keyRange / SPACING + 1;
+    for (int block = 0; block <= blocks; block++){
+      tree.addElement(block * SPACING);
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong checks = new AtomicLong();
+    AtomicLong failures = new AtomicLong();
+    AtomicReference<String> firstFailure = new AtomicReference<String>();
+    int writers = Math.max(1, threads / 2);
+    Thread[] workers = new Thread[writers + 1 + Math.max(1, threads - writers - 1)];
+    for (int t = 0; t < workers.length; t++){
+      long seed = t;
+      int role = (t < writers) ? 0 : (t == writers) ? 1 : 2;
+      workers[t] = new Thread(() -> {
+        Random local = new Random(seed);
+        long done = 0;
+        while (running.get()){
+          int key = local.nextInt(keyRange);
+          String failure = null;
+          if (role == 0){
+            if (key % SPACING != 0){
+              if (local.nextBoolean()){
+                tree.addElement(key);
+              }else if (tree.contains(key)){
+                try{
+                  tree.removeElement(key);
+                }catch (ElementNotFoundException e){
+                  // another writer removed it in between
+                }
+              }
+            }
+            continue;
+          }else if (role == 1){
+            int from = key / SPACING * SPACING + 1;
+            int to = from + SPACING - 1;
+            int[] outside = {-1};
+            tree.removeRange(from, to, (Integer e) -> {
+              if (e < from || e >= to){
+                outside[0] = e;
+              }
+            });
+            if (outside[0] >= 0){
+              failure = "removeRange(" + from + ", " + to + ") evicted "
+                + outside[0];
+            }
+          }else if (local.nextInt(1000) == 0){
+            failure = checkIterator(tree);
+          }else{
+            failure = checkNavigation(tree, key);
+          }
+          done++;
+          if (failure != null){
+            failures.incrementAndGet();
+            firstFailure.compareAndSet(null, failure);
+          }
+        }
+        checks.addAndGet(done);
+      });
+      workers[t].start();
+    }
+    Thread.sleep(millis);
+    running.set(false);
+    for (Thread worker : workers){
+      worker.join();
+    }
+    String failure = checkIterator(tree);
+    if (failure == null && !tree.isBalanced()){
+      failure = "a stored height is stale or a node is out of balance";
+    }
+    if (failure != null){
+      failures.incrementAndGet();
+      firstFailure.compareAndSet(null, "after the run: " + failure);
+    }
+
+    System.out.println(threads + " threads, " + checks.get() + " checks, "
+      + failures.get() + " failures");
+    if (firstFailure.get() != null){
+      System.out.println("first failure: " + firstFailure.get());
+    }
+    return failures.get() == 0;
+  }
+
+  /**
+   * Checks floor, ceiling, lower and higher of a key against the anchors
+   * around it, returning a description of the first wrong answer or null.
+   */
+  private static String checkNavigation(ConcurrentAVLTree<Integer> tree,
+    int key){
+    int floorAnchor = key / SPACING * SPACING;
+    int ceilingAnchor = (key % SPACING == 0) ? key : floorAnchor + SPACING;
+    Integer found = tree.higher(key);
+    if (found == null || found <= key || found > floorAnchor + SPACING){
+      return "higher(" + key + ") == " + found;
+    }
+    found = tree.ceiling(key);
+    if (found == null || found < key || found > ceilingAnchor){
+      return "ceiling(" + key + ") == " + found;
+    }
+    found = tree.floor(key);
+    if (found == null || found > key || found < floorAnchor){
+      return "floor(" + key + ") == " + found;
+    }
+    found = tree.lower(key);
+    if (key == 0){
+      return (found == null) ? null : "lower(0) == " + found;
+    }
+    int lowerAnchor = (key - 1) / SPACING * SPACING;
+    if (found == null || found >= key || found < lowerAnchor){
+      return "lower(" + key + ") == " + found;
+    }
+    return null;
+  }
+
+  /**
+   * Checks that an iterator never goes back and returns every anchor,
+   * returning a description of the first wrong step or null.
+   */
+  private static String checkIterator(ConcurrentAVLTree<Integer> tree){
+    int previous = -1;
+    Iterator<Integer> elements = tree.iterator();
+    while (elements.hasNext()){
+      int element = elements.next();
+      if (element < previous || element > previous / SPACING * SPACING
+          + SPACING){
+        return "iterator stepped from " + previous + " to " + element;
+      }
+      previous = element;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,51 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Footprint estimates how many bytes objects take on the heap of the
+ * running JVM, from the size of its references and object headers. The
+ * figures are those of HotSpot: an object is its header followed by its
+ * fields, padded to a multiple of 8 bytes.
+ */
+final class Footprint{
+  /** the size of a reference, 4 bytes if compressed */
+  static final int REFERENCE;
+  /** the size of an object header */
+  static final int HEADER;
+
+  private static final int ALIGNMENT = 8;
+
+  static{
+    // without the HotSpot flags, assume the default, which compresses
+    // references in heaps of less than 32 GB
+    boolean smallHeap = Runtime.getRuntime().maxMemory() < (32L << 30);
+    boolean compressedOops = flag("UseCompressedOops", smallHeap);
+    boolean compressedClasses = flag("UseCompressedClassPointers", smallHeap);
+    REFERENCE = compressedOops ? 4 : 8;
+    HEADER = compressedClasses ? 12 : 16;
+  }
+
+  private Footprint(){
+  }
+
+  /**
+   * Returns the size of an object with the specified fields.
+   *
+   * @param references the number of reference fields
+   * @param primitiveBytes the bytes taken by the primitive fields
+   * @return the size of the object in bytes, padding included
+   */
+  static long objectBytes(int references, int primitiveBytes){
+    long bytes = HEADER + (long)references * REFERENCE + primitiveBytes;
+    return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  private static boolean flag(String name, boolean otherwise){
+    try{
+      return Boolean.parseBoolean(ManagementFactory
+        .getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class)
+        .getVMOption(name).getValue());
+    }catch (RuntimeException | LinkageError e){
+      return otherwise;
+    }
+  }
+}
@@ -0,0 +1,468 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * FrozenBinarySearchTree is an immutable binary search tree made by
+ * LinkedBinarySearchTree.freeze() for phases that only read. It keeps its
+ * elements in a single array in Eytzinger order: the root at index 1 and
+ * the children of index k at 2k and 2k + 1, a complete tree filled level
+ * by level. A search touches no nodes, only the array, whose top levels
+ * stay together in the cache, and the next index is computed from the
+ * comparison rather than branched on. The elements themselves are still
+ * objects the comparisons have to read, and for a large tree those reads
+ * miss the cache as often as the nodes of a linked tree do. A tree frozen
+ * with a key function also keeps a long key for each element in a second
+ * array and compares the keys first, so that a search reads elements only
+ * where keys are equal.
+ *
+ * Every occurrence of an element gets its own slot. thaw() builds a
+ * LinkedBinarySearchTree holding the same elements again.
+ */
+public class FrozenBinarySearchTree<T> implements Iterable<T>{
+  private static final int MAX_SIZE = (1 << 30) - 1;
+
+  private final Object[] elements;   // elements[0] is not used
+  private final int n;
+  private final boolean multiset;
+  private final Comparator<? super T> comparator;   // null for natural order
+  private final ToLongFunction<? super T> key;   // null if not keyed
+  private final long[] keys;
+
+  /**
+   * Creates a frozen tree of the first n elements of an iterator that
+   * returns them in ascending order.
+   *
+   * @param sorted an iterator over the elements in ascending order
+   * @param n the number of elements
+   * @param multiset whether thaw() should count equal elements in a node
+   * @param comparator the order of the elements, or null for natural order
+   * @param key a key function consistent with the order of the elements,
+   *        or null
+   * @throws IllegalArgumentException if there are 2^30 elements or more
+   */
+  FrozenBinarySearchTree(Iterator<T> sorted, int n, boolean multiset,
+    Comparator<? super T> comparator, ToLongFunction<? super T> key){
+    if (n > MAX_SIZE){
+      // the index of a search would overflow
+      throw new IllegalArgumentException("Too many elements to freeze: " + n);
+    }
+    this.n = n;
+    this.multiset = multiset;
+    this.comparator = comparator;
+    this.key = key;
+    elements = new Object[n + 1];
+    keys = (key == null) ? null : new long[n + 1];
+    fill(sorted, 1);
+  }
+
+  /**
+   * Stores the elements of the subtree at index k in inorder, which is the
+   * order the iterator returns them in.
+   */
+  private void fill(Iterator<T> sorted, int k){
+    if (k <= n){
+      fill(sorted, 2 * k);
+      elements[k] = sorted.next();
+      if (keys != null){
+        keys[k] = key.applyAsLong(element(k));
+      }
+      fill(sorted, 2 * k + 1);
+    }
+  }
+
+  /**
+   * Returns a new LinkedBinarySearchTree holding the elements of this
+   * tree, built in O(n) time.
+   *
+   * @return a mutable tree with the same elements
+   */
+  public LinkedBinarySearchTree<T> thaw(){
+    LinkedBinarySearchTree<T> tree =
+      new LinkedBinarySearchTree<T>(multiset, comparator);
+    tree.addAll(Arrays.asList(toArray()));
+    return tree;
+  }
+
+  /**
+   * Returns the number of elements in this tree.
+   *
+   * @return the number of elements
+   */
+  public int size(){
+    return n;
+  }
+
+  /**
+   * Returns true if this tree is empty and false otherwise.
+   *
+   * @return true if this tree is empty, false otherwise
+   */
+  public boolean isEmpty(){
+    return n == 0;
+  }
+
+  /**
+   * Returns an element of this tree equal to the target, or null if there
+   * is none.
+   *
+   * @param targetElement the element being sought
+   * @return the matching element, or null
+   */
+  public T find(T targetElement){
+    int k = lowerBound(targetElement, false);
+    if (k != 0 && compare(element(k), targetElement) == 0){
+      return element(k);
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if this tree contains an element equal to the target.
+   *
+   * @param targetElement the element being sought
+   * @return true if the element is in this tree
+   */
+  public boolean contains(T targetElement){
+    return find(targetElement) != null;
+  }
+
+  /**
+   * Returns the smallest element in this tree.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMin() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("FrozenBinarySearchTree");
+    }
+    return element(first());
+  }
+
+  /**
+   * Returns the largest element in this tree.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMax() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("FrozenBinarySearchTree");
+    }
+    return element(last());
+  }
+
+  /**
+   * Returns the greatest element no greater than the specified one, or null.
+   *
+   * @param element the element to compare with
+   * @return the greatest element no greater than the element, or null
+   */
+  public T floor(T element){
+    return elementOrNull(predecessor(lowerBound(element, true)));
+  }
+
+  /**
+   * Returns the least element no less than the specified one, or null.
+   *
+   * @param element the element to compare with
+   * @return the least element no less than the element, or null
+   */
+  public T ceiling(T element){
+    return elementOrNull(lowerBound(element, false));
+  }
+
+  /**
+   * Returns the greatest element strictly less than the specified one, or
+   * null.
+   *
+   * @param element the element to compare with
+   * @return the greatest element less than the element, or null
+   */
+  public T lower(T element){
+    return elementOrNull(predecessor(lowerBound(element, false)));
+  }
+
+  /**
+   * Returns the least element strictly greater than the specified one, or
+   * null.
+   *
+   * @param element the element to compare with
+   * @return the least element greater than the element, or null
+   */
+  public T higher(T element){
+    return elementOrNull(lowerBound(element, true));
+  }
+
+  /**
+   * Returns the number of elements less than the specified one, adding up
+   * the sizes of the subtrees passed on the left, in O(log^2 n) time.
+   *
+   * @param element the element whose rank is sought
+   * @return the number of elements less than the element
+   */
+  public int rank(T element){
+    int k = lowerBound(element, false);
+    return (k == 0) ? n : position(k);
+  }
+
+  /**
+   * Returns the element at the specified position in ascending order, in
+   * O(log^2 n) time.
+   *
+   * @param i the zero-based position of the element
+   * @return the i-th smallest element
+   * @throws IndexOutOfBoundsException if i is negative or not less than size()
+   */
+  public T select(int i) throws IndexOutOfBoundsException{
+    if (i < 0 || i >= n){
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + n);
+    }
+    int k = 1;
+    while (true){
+      int leftSize = subtreeSize(2 * k);
+      if (i < leftSize){
+        k = 2 * k;
+      }else if (i == leftSize){
+        return element(k);
+      }else{
+        i = i - leftSize - 1;
+        k = 2 * k + 1;
+      }
+    }
+  }
+
+  /**
+   * Returns an iterator over the elements of this tree in ascending order.
+   *
+   * @return an iterator over all the elements
+   */
+  public Iterator<T> iterator(){
+    return new RangeIterator(first(), null, false);
+  }
+
+  /**
+   * Returns an iterator over the elements from fromElement to toElement in
+   * ascending order. The first element is found in O(log n) time, and each
+   * next one in amortized constant time. Either bound may be null for no
+   * bound.
+   *
+   * @param fromElement the low end of the range, or null
+   * @param fromInclusive whether the low end is in the range
+   * @param toElement the high end of the range, or null
+   * @param toInclusive whether the high end is in the range
+   * @return an iterator over the elements in the range
+   */
+  public Iterator<T> iterator(T fromElement, boolean fromInclusive,
+    T toElement, boolean toInclusive){
+    int k = (fromElement == null) ? first()
+      : lowerBound(fromElement, !fromInclusive);
+    return new RangeIterator(k, toElement, toInclusive);
+  }
+
+  /**
+   * Returns the elements of this tree in ascending order.
+   *
+   * @return an array of the elements in ascending order
+   */
+  public T[] toArray(){
+    T[] result = (T[])new Object[n];
+    int i = 0;
+    for (int k = first(); k != 0; k = successor(k)){
+      result[i++] = element(k);
+    }
+    return result;
+  }
+
+  public String toString(){
+    StringBuilder result = new StringBuilder();
+    for (T element : this){
+      result.append(element);
+    }
+    return result.toString();
+  }
+
+  private T element(int k){
+    return (T)elements[k];
+  }
+
+  private T elementOrNull(int k){
+    return (k == 0) ? null : element(k);
+  }
+
+  private int compare(T a, T b){
+    if (comparator != null){
+      return comparator.compare(a, b);
+    }
+    return ((Comparable<T>)a).compareTo(b);
+  }
+
+  /**
+   * Returns the index of the first element in ascending order that is not
+   * less than the key (or, if strict, greater than it), or 0 if there is
+   * none. The descent does not stop at an equal element, so the loop has
+   * no exit but its bound. It ends below a leaf, at an index whose
+   * trailing one bits, with the zero bit above them, mark the right turns
+   * after the last left turn; shifting them off gives the node where that
+   * left turn was taken.
+   */
+  private int lowerBound(T element, boolean strict){
+    int bound = strict ? 0 : -1;
+    long elementKey = (keys == null) ? 0 : key.applyAsLong(element);
+    int k = 1;
+    while (k <= n){
+      k = 2 * k + (compareAt(k, element, elementKey) <= bound ? 1 : 0);
+    }
+    return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+  }
+
+  /**
+   * Compares the element at index k with the specified one, by their keys
+   * if this tree is keyed and by the elements if the keys are equal.
+   */
+  private int compareAt(int k, T element, long elementKey){
+    if (keys != null){
+      int comparison = Long.compare(keys[k], elementKey);
+      if (comparison != 0){
+        return comparison;
+      }
+    }
+    return compare(element(k), element);
+  }
+
+  private int first(){
+    if (n == 0){
+      return 0;
+    }
+    int k = 1;
+    while (2 * k <= n){
+      k = 2 * k;
+    }
+    return k;
+  }
+
+  private int last(){
+    if (n == 0){
+      return 0;
+    }
+    int k = 1;
+    while (2 * k + 1 <= n){
+      k = 2 * k + 1;
+    }
+    return k;
+  }
+
+  /**
+   * Returns the index of the next element in ascending order, or 0.
+   */
+  private int successor(int k){
+    if (2 * k + 1 <= n){
+      k = 2 * k + 1;
+      while (2 * k <= n){
+        k = 2 * k;
+      }
+      return k;
+    }
+    // climb while coming from a right child
+    while ((k & 1) == 1){
+      k = k >>> 1;
+    }
+    return k >>> 1;
+  }
+
+  /**
+   * Returns the index of the previous element in ascending order, or 0.
+   * The predecessor of 0, the position past the end, is the last element.
+   */
+  private int predecessor(int k){
+    if (k == 0){
+      return last();
+    }
+    if (2 * k <= n){
+      k = 2 * k;
+      while (2 * k + 1 <= n){
+        k = 2 * k + 1;
+      }
+      return k;
+    }
+    // climb while coming from a left child
+    while (k > 1 && (k & 1) == 0){
+      k = k >>> 1;
+    }
+    return k >>> 1;
+  }
+
+  /**
+   * Returns the number of elements in the subtree at index k, counting
+   * the indices it covers on each level.
+   */
+  private int subtreeSize(int k){
+    int size = 0;
+    long low = k;
+    long high = k;
+    while (low <= n){
+      size += (int)(Math.min(high, n) - low + 1);
+      low = 2 * low;
+      high = 2 * high + 1;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the position in ascending order of the element at index k.
+   */
+  private int position(int k){
+    int result = subtreeSize(2 * k);
+    while (k > 1){
+      if ((k & 1) == 1){
+        // k is a right child: its parent and the left sibling come first
+        result = result + subtreeSize(k - 1) + 1;
+      }
+      k = k >>> 1;
+    }
+    return result;
+  }
+
+  /**
+   * RangeIterator walks the array in inorder from a start index up to an
+   * optional upper bound.
+   */
+  private class RangeIterator implements Iterator<T>{
+    private int next;
+    private T toElement;
+    private boolean toInclusive;
+
+    public RangeIterator(int start, T toElement, boolean toInclusive){
+      this.toElement = toElement;
+      this.toInclusive = toInclusive;
+      next = start;
+      checkBound();
+    }
+
+    public boolean hasNext(){
+      return next != 0;
+    }
+
+    public T next(){
+      if (next == 0){
+        throw new NoSuchElementException();
+      }
+      T result = element(next);
+      next = successor(next);
+      checkBound();
+      return result;
+    }
+
+    private void checkBound(){
+      if (next != 0 && toElement != null){
+        int comparison = compare(element(next), toElement);
+        if (comparison > 0 || (comparison == 0 && !toInclusive)){
+          next = 0;
+        }
+      }
+    }
+  }
+}
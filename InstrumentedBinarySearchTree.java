@@ -0,0 +1,398 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * InstrumentedBinarySearchTree is a LinkedBinarySearchTree that records
+ * what its operations cost: it counts the rotations of each kind and the
+ * comparisons each operation makes, which follow the depth its search
+ * reaches, and times every insertion, removal and search. The figures are
+ * kept in a TreeMetrics object, which can be registered as a JMX MBean,
+ * and each operation is also committed as a TreeOperationEvent for Flight
+ * Recorder. An operation that throws, such as the removal of an element
+ * that is not in the tree, is not recorded. A batch operation such as
+ * addAll() or removeRange() is recorded once, with the number of elements
+ * it inserted or removed, and the single operations it makes are not
+ * recorded apart.
+ *
+ * Recording can be switched off at run time with setEnabled(false); the
+ * tree then costs one volatile read per operation and one increment per
+ * comparison more than a plain LinkedBinarySearchTree, which carries no
+ * instrumentation at all.
+ */
+public class InstrumentedBinarySearchTree<T> extends LinkedBinarySearchTree<T>{
+  private final TreeMetrics metrics = new TreeMetrics();
+
+  // made by the operation in progress
+  private int comparisons;
+  private int rotations;
+  private boolean inDoubleRotation;
+  private boolean inBatch;
+
+  /**
+   * Creates an empty tree with recording enabled.
+   */
+  public InstrumentedBinarySearchTree(){
+    super();
+  }
+
+  /**
+   * Returns the metrics of this tree.
+   *
+   * @return the metrics
+   */
+  public TreeMetrics getMetrics(){
+    return metrics;
+  }
+
+  public void addElement(T element){
+    if (!recording()){
+      super.addElement(element);
+      return;
+    }
+    TreeOperationEvent event = start();
+    long begin = System.nanoTime();
+    super.addElement(element);
+    finish(event, TreeMetrics.INSERT, "insert", begin);
+  }
+
+  public void removeElement(T targetElement) throws ElementNotFoundException{
+    if (!recording()){
+      super.removeElement(targetElement);
+      return;
+    }
+    TreeOperationEvent event = start();
+    long begin = System.nanoTime();
+    super.removeElement(targetElement);
+    finish(event, TreeMetrics.REMOVE, "remove", begin);
+  }
+
+  public T removeMin() throws EmptyCollectionException{
+    if (!recording()){
+      return super.removeMin();
+    }
+    TreeOperationEvent event = start();
+    long begin = System.nanoTime();
+    T result = super.removeMin();
+    finish(event, TreeMetrics.REMOVE, "removeMin", begin);
+    return result;
+  }
+
+  public T removeMax() throws EmptyCollectionException{
+    if (!recording()){
+      return super.removeMax();
+    }
+    TreeOperationEvent event = start();
+    long begin = System.nanoTime();
+    T result = super.removeMax();
+    finish(event, TreeMetrics.REMOVE, "removeMax", begin);
+    return result;
+  }
+
+  /**
+   * Returns the matching element, or null if there is none, recording the
+   * search. contains() searches through this method as well.
+   *
+   * @param targetElement the element being sought
+   * @return the matching element, or null
+   */
+  public T find(T targetElement){
+    if (!recording()){
+      return super.find(targetElement);
+    }
+    TreeOperationEvent event = start();
+    long begin = System.nanoTime();
+    T result = super.find(targetElement);
+    finish(event, TreeMetrics.SEARCH, "search", begin);
+    return result;
+  }
+
+  /**
+   * Adds all the elements of the collection, recording the batch as one
+   * insertion of as many elements as the tree grew by.
+   *
+   * @param elements the elements to be added
+   */
+  public void addAll(Collection<T> elements){
+    if (!recording()){
+      super.addAll(elements);
+      return;
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int before = size();
+    try{
+      super.addAll(elements);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.INSERT, "addAll", begin, size() - before);
+  }
+
+  /**
+   * Removes every occurrence of the elements of the collection, recording
+   * the batch as one removal of as many elements as the tree shrank by.
+   *
+   * @param elements the elements to be removed
+   */
+  public void removeAll(Collection<T> elements){
+    if (!recording()){
+      super.removeAll(elements);
+      return;
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int before = size();
+    try{
+      super.removeAll(elements);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "removeAll", begin, before - size());
+  }
+
+  /**
+   * Removes every occurrence of the element, recording them as one removal
+   * of as many elements as the tree shrank by.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeAllOccurrences(T targetElement)
+    throws ElementNotFoundException{
+    if (!recording()){
+      super.removeAllOccurrences(targetElement);
+      return;
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int before = size();
+    try{
+      super.removeAllOccurrences(targetElement);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "removeAllOccurrences", begin,
+      before - size());
+  }
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, recording them as one removal. The overload without evicted
+   * calls this one, so it is recorded as well.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeRange(T fromElement, T toElement,
+    Consumer<? super T> evicted){
+    if (!recording()){
+      return super.removeRange(fromElement, toElement, evicted);
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int removed;
+    try{
+      removed = super.removeRange(fromElement, toElement, evicted);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "removeRange", begin, removed);
+    return removed;
+  }
+
+  /**
+   * Removes the elements less than toElement, recording them as one
+   * removal.
+   *
+   * @param toElement the bound, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement, Consumer<? super T> evicted){
+    if (!recording()){
+      return super.removeHead(toElement, evicted);
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int removed;
+    try{
+      removed = super.removeHead(toElement, evicted);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "removeHead", begin, removed);
+    return removed;
+  }
+
+  /**
+   * Removes the elements greater than or equal to fromElement, recording
+   * them as one removal.
+   *
+   * @param fromElement the bound, inclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement, Consumer<? super T> evicted){
+    if (!recording()){
+      return super.removeTail(fromElement, evicted);
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    int removed;
+    try{
+      removed = super.removeTail(fromElement, evicted);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "removeTail", begin, removed);
+    return removed;
+  }
+
+  /**
+   * Removes the n smallest elements, recording them as one removal.
+   *
+   * @param n the number of elements to remove
+   * @return the removed elements in ascending order
+   */
+  public List<T> pollMin(int n){
+    if (!recording()){
+      return super.pollMin(n);
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    List<T> result;
+    try{
+      result = super.pollMin(n);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "pollMin", begin, result.size());
+    return result;
+  }
+
+  /**
+   * Removes the n largest elements, recording them as one removal.
+   *
+   * @param n the number of elements to remove
+   * @return the removed elements in descending order
+   */
+  public List<T> pollMax(int n){
+    if (!recording()){
+      return super.pollMax(n);
+    }
+    TreeOperationEvent event = startBatch();
+    long begin = System.nanoTime();
+    List<T> result;
+    try{
+      result = super.pollMax(n);
+    }finally{
+      inBatch = false;
+    }
+    finish(event, TreeMetrics.REMOVE, "pollMax", begin, result.size());
+    return result;
+  }
+
+  protected int compare(T a, T b){
+    comparisons++;
+    return super.compare(a, b);
+  }
+
+  protected BinaryTreeNode<T> singleRightRotation(BinaryTreeNode<T> oldRoot){
+    if (!inDoubleRotation){
+      rotated(TreeMetrics.SINGLE_RIGHT);
+    }
+    return super.singleRightRotation(oldRoot);
+  }
+
+  protected BinaryTreeNode<T> singleLeftRotation(BinaryTreeNode<T> oldRoot){
+    if (!inDoubleRotation){
+      rotated(TreeMetrics.SINGLE_LEFT);
+    }
+    return super.singleLeftRotation(oldRoot);
+  }
+
+  protected BinaryTreeNode<T> doubleLeftRightRotation(BinaryTreeNode<T> oldRoot){
+    rotated(TreeMetrics.DOUBLE_LEFT_RIGHT);
+    inDoubleRotation = true;
+    try{
+      return super.doubleLeftRightRotation(oldRoot);
+    }finally{
+      inDoubleRotation = false;
+    }
+  }
+
+  protected BinaryTreeNode<T> doubleRightLeftRotation(BinaryTreeNode<T> oldRoot){
+    rotated(TreeMetrics.DOUBLE_RIGHT_LEFT);
+    inDoubleRotation = true;
+    try{
+      return super.doubleRightLeftRotation(oldRoot);
+    }finally{
+      inDoubleRotation = false;
+    }
+  }
+
+  private void rotated(int kind){
+    if (metrics.isEnabled()){
+      metrics.rotation(kind);
+      rotations++;
+    }
+  }
+
+  /**
+   * Returns true if the operation about to start should be recorded: the
+   * metrics are enabled and it is not part of a batch being recorded.
+   */
+  private boolean recording(){
+    return metrics.isEnabled() && !inBatch;
+  }
+
+  /**
+   * Starts recording a batch operation, inside which the single operations
+   * are not recorded. The caller clears inBatch when the batch returns.
+   */
+  private TreeOperationEvent startBatch(){
+    inBatch = true;
+    return start();
+  }
+
+  /**
+   * Starts recording an operation.
+   */
+  private TreeOperationEvent start(){
+    comparisons = 0;
+    rotations = 0;
+    TreeOperationEvent event = new TreeOperationEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Records an operation on one element started at "begin" and commits its
+   * event.
+   */
+  private void finish(TreeOperationEvent event, int operation, String label,
+    long begin){
+    finish(event, operation, label, begin, 1);
+  }
+
+  /**
+   * Records an operation on the specified number of elements started at
+   * "begin" and commits its event.
+   */
+  private void finish(TreeOperationEvent event, int operation, String label,
+    long begin, int elements){
+    metrics.operation(operation, elements, comparisons,
+      System.nanoTime() - begin);
+    if (event.shouldCommit()){
+      event.operation = label;
+      event.elements = elements;
+      event.comparisons = comparisons;
+      event.rotations = rotations;
+      event.size = size();
+      event.commit();
+    }
+  }
+}
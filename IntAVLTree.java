@@ -0,0 +1,397 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * IntAVLTree is an AVL tree of primitive int keys. It runs the same
+ * insertion, removal and rotation algorithms as LinkedBinarySearchTree,
+ * but instead of linking node objects it keeps the keys, the child indices
+ * and the heights in parallel arrays. An entry costs 13 bytes, there are
+ * no objects to collect, and comparing two keys is a single instruction.
+ * Slots of removed entries are chained into a free list through the left
+ * array and reused. Note that equal keys are added to the right.
+ */
+public class IntAVLTree{
+  private static final int NIL = -1;
+  private static final int DEFAULT_CAPACITY = 16;
+  // an AVL tree of 2^31 entries is less than 46 levels high
+  private static final int MAX_PATH = 64;
+
+  private int[] keys;
+  private int[] left, right;
+  private byte[] height;
+  private int root = NIL;
+  private int free = NIL;   // first slot of the free list
+  private int used = 0;     // slots handed out so far, free or not
+  private int count = 0;
+
+  // the search path of the current update, shared by all of them
+  private int[] path = new int[MAX_PATH];
+  private boolean[] wentLeft = new boolean[MAX_PATH];
+
+  /**
+   * Creates an empty tree.
+   */
+  public IntAVLTree(){
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree with room for the specified number of keys.
+   *
+   * @param capacity the number of keys to allocate space for
+   */
+  public IntAVLTree(int capacity){
+    capacity = Math.max(capacity, 1);
+    keys = new int[capacity];
+    left = new int[capacity];
+    right = new int[capacity];
+    height = new byte[capacity];
+  }
+
+  /**
+   * Returns true if this tree is empty and false otherwise.
+   *
+   * @return true if this tree is empty, false otherwise
+   */
+  public boolean isEmpty(){
+    return root == NIL;
+  }
+
+  /**
+   * Returns the number of keys in this tree.
+   *
+   * @return the number of keys in the tree
+   */
+  public int size(){
+    return count;
+  }
+
+  /**
+   * Returns the height of this tree, -1 if it is empty.
+   *
+   * @return the height of the tree
+   */
+  public int getHeight(){
+    return height(root);
+  }
+
+  private int height(int node){
+    return (node == NIL) ? -1 : height[node];
+  }
+
+  /**
+   * Adds the specified key to this tree. Note that equal keys are added
+   * to the right.
+   *
+   * @param key the key to be added
+   */
+  public void addElement(int key){
+    int depth = 0;
+    int current = root;
+    while (current != NIL){
+      path[depth] = current;
+      wentLeft[depth] = key < keys[current];
+      current = wentLeft[depth] ? left[current] : right[current];
+      depth++;
+    }
+    root = retrace(0, depth, newNode(key));
+    count++;
+  }
+
+  /**
+   * Returns true if this tree contains the specified key.
+   *
+   * @param key the key being sought
+   * @return true if the key is in this tree
+   */
+  public boolean contains(int key){
+    int current = root;
+    while (current != NIL){
+      int currentKey = keys[current];
+      if (key == currentKey){
+        return true;
+      }
+      current = (key < currentKey) ? left[current] : right[current];
+    }
+    return false;
+  }
+
+  /**
+   * Removes one occurrence of the specified key from this tree.
+   *
+   * @param key the key to be removed
+   * @throws ElementNotFoundException if the key is not in the tree
+   */
+  public void removeElement(int key) throws ElementNotFoundException{
+    int depth = 0;
+    int current = root;
+    while (current != NIL && keys[current] != key){
+      path[depth] = current;
+      wentLeft[depth] = key < keys[current];
+      current = wentLeft[depth] ? left[current] : right[current];
+      depth++;
+    }
+    if (current == NIL){
+      throw new ElementNotFoundException("IntAVLTree");
+    }
+    root = retrace(0, depth, remove(current, depth));
+    freeNode(current);
+    count--;
+  }
+
+  /**
+   * Removes and returns the smallest key in this tree.
+   *
+   * @return the smallest key
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public int removeMin() throws EmptyCollectionException{
+    return removeExtreme(true);
+  }
+
+  /**
+   * Removes and returns the largest key in this tree.
+   *
+   * @return the largest key
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public int removeMax() throws EmptyCollectionException{
+    return removeExtreme(false);
+  }
+
+  /**
+   * Returns the smallest key in this tree without removing it.
+   *
+   * @return the smallest key
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public int findMin() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("IntAVLTree");
+    }
+    int current = root;
+    while (left[current] != NIL){
+      current = left[current];
+    }
+    return keys[current];
+  }
+
+  /**
+   * Returns the largest key in this tree without removing it.
+   *
+   * @return the largest key
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public int findMax() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("IntAVLTree");
+    }
+    int current = root;
+    while (right[current] != NIL){
+      current = right[current];
+    }
+    return keys[current];
+  }
+
+  /**
+   * Removes all keys from this tree, keeping the allocated arrays.
+   */
+  public void clear(){
+    root = NIL;
+    free = NIL;
+    used = 0;
+    count = 0;
+  }
+
+  /**
+   * Passes every key of this tree to the action in ascending order.
+   *
+   * @param action the action to perform on each key
+   */
+  public void forEach(IntConsumer action){
+    int[] stack = new int[height(root) + 1];
+    int depth = 0;
+    int current = root;
+    while (current != NIL || depth > 0){
+      while (current != NIL){
+        stack[depth++] = current;
+        current = left[current];
+      }
+      current = stack[--depth];
+      action.accept(keys[current]);
+      current = right[current];
+    }
+  }
+
+  /**
+   * Returns the keys of this tree in ascending order.
+   *
+   * @return an array of the keys in ascending order
+   */
+  public int[] toArray(){
+    int[] result = new int[count];
+    int[] index = new int[1];
+    forEach(key -> result[index[0]++] = key);
+    return result;
+  }
+
+  private int removeExtreme(boolean min){
+    if (isEmpty()){
+      throw new EmptyCollectionException("IntAVLTree");
+    }
+    int depth = 0;
+    int current = root;
+    int next = min ? left[current] : right[current];
+    while (next != NIL){
+      path[depth] = current;
+      wentLeft[depth] = min;
+      depth++;
+      current = next;
+      next = min ? left[current] : right[current];
+    }
+    int result = keys[current];
+    root = retrace(0, depth, min ? right[current] : left[current]);
+    freeNode(current);
+    count--;
+    return result;
+  }
+
+  /**
+   * Unlinks the specified node, whose own search path ends at path[depth],
+   * and returns its replacement. A node with two children is replaced by
+   * its inorder successor, whose path is recorded above the node's own.
+   */
+  private int remove(int node, int depth){
+    if (left[node] == NIL){         // CASE 1: Right Child Only
+      return right[node];
+    }else if (right[node] == NIL){  // CASE 2: Left Child Only
+      return left[node];
+    }else{                           // CASE 3: both L & R children
+      int base = depth;
+      int current = right[node];
+      while (left[current] != NIL){
+        path[depth] = current;
+        wentLeft[depth] = true;
+        depth++;
+        current = left[current];
+      }
+      right[current] = retrace(base, depth, right[current]);
+      left[current] = left[node];
+      return rebalance(current);
+    }
+  }
+
+  private int newNode(int key){
+    int node;
+    if (free != NIL){
+      node = free;
+      free = left[node];
+    }else{
+      if (used == keys.length){
+        grow();
+      }
+      node = used++;
+    }
+    keys[node] = key;
+    left[node] = NIL;
+    right[node] = NIL;
+    height[node] = 0;
+    return node;
+  }
+
+  private void freeNode(int node){
+    left[node] = free;
+    free = node;
+  }
+
+  private void grow(){
+    int capacity = keys.length + (keys.length >> 1) + 1;
+    keys = Arrays.copyOf(keys, capacity);
+    left = Arrays.copyOf(left, capacity);
+    right = Arrays.copyOf(right, capacity);
+    height = Arrays.copyOf(height, capacity);
+  }
+
+  /**
+   * Walks back up path[base .. depth - 1] after the subtree below it has
+   * been replaced by "child", as LinkedBinarySearchTree.retrace does.
+   */
+  private int retrace(int base, int depth, int child){
+    boolean balancing = true;
+    for (int i = depth - 1; i >= base && balancing; i--){
+      int parent = path[i];
+      if (wentLeft[i]){
+        left[parent] = child;
+      }else{
+        right[parent] = child;
+      }
+      int oldHeight = height[parent];
+      child = rebalance(parent);
+      balancing = (height[child] != oldHeight);
+      if (!balancing && i > base){
+        // nothing above can change, apart from the link to a rotated subtree
+        if (wentLeft[i - 1]){
+          left[path[i - 1]] = child;
+        }else{
+          right[path[i - 1]] = child;
+        }
+        return path[base];
+      }
+    }
+    return child;
+  }
+
+  private int balanceFactor(int node){
+    return height(right[node]) - height(left[node]);
+  }
+
+  private void update(int node){
+    height[node] = (byte)(Math.max(height(left[node]), height(right[node])) + 1);
+  }
+
+  private int rebalance(int node){
+    update(node);
+    if (balanceFactor(node) == -2){
+      if (balanceFactor(left[node]) <= 0){
+        node = singleRightRotation(node);
+      }else{
+        node = doubleLeftRightRotation(node);
+      }
+    }else if (balanceFactor(node) == 2){
+      if (balanceFactor(right[node]) >= 0){
+        node = singleLeftRotation(node);
+      }else{
+        node = doubleRightLeftRotation(node);
+      }
+    }
+    return node;
+  }
+
+  private int singleRightRotation(int oldRoot){
+    int newRoot = left[oldRoot];
+    left[oldRoot] = right[newRoot];
+    right[newRoot] = oldRoot;
+    update(oldRoot);
+    update(newRoot);
+    return newRoot;
+  }
+
+  private int singleLeftRotation(int oldRoot){
+    int newRoot = right[oldRoot];
+    right[oldRoot] = left[newRoot];
+    left[newRoot] = oldRoot;
+    update(oldRoot);
+    update(newRoot);
+    return newRoot;
+  }
+
+  private int doubleLeftRightRotation(int oldRoot){
+    left[oldRoot] = singleLeftRotation(left[oldRoot]);
+    return singleRightRotation(oldRoot);
+  }
+
+  private int doubleRightLeftRotation(int oldRoot){
+    right[oldRoot] = singleRightRotation(right[oldRoot]);
+    return singleLeftRotation(oldRoot);
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Interval is the half-open interval [start, end) of a Comparable type,
+ * holding the points from start up to but not including end. An interval
+ * whose start equals its end is empty. Intervals are ordered by their
+ * start and then by their end, which is the order an IntervalTree keeps
+ * them in.
+ */
+public final class Interval<C extends Comparable<? super C>>
+  implements Comparable<Interval<C>>{
+  private final C start;
+  private final C end;
+
+  /**
+   * Creates the interval [start, end).
+   *
+   * @param start the first point of the interval
+   * @param end the first point past the interval
+   * @throws IllegalArgumentException if start is greater than end
+   */
+  public Interval(C start, C end){
+    if (start.compareTo(end) > 0){
+      throw new IllegalArgumentException("Interval ends before it starts: ["
+        + start + ", " + end + ")");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the first point of this interval.
+   *
+   * @return the start of the interval
+   */
+  public C getStart(){
+    return start;
+  }
+
+  /**
+   * Returns the first point past this interval.
+   *
+   * @return the end of the interval
+   */
+  public C getEnd(){
+    return end;
+  }
+
+  /**
+   * Returns true if this interval holds the specified point.
+   *
+   * @param point the point to test
+   * @return true if start <= point < end
+   */
+  public boolean contains(C point){
+    return start.compareTo(point) <= 0 && point.compareTo(end) < 0;
+  }
+
+  /**
+   * Returns true if this interval shares a point with [from, to).
+   *
+   * @param from the start of the other interval
+   * @param to the end of the other interval
+   * @return true if start < to and from < end
+   */
+  public boolean overlaps(C from, C to){
+    return start.compareTo(to) < 0 && from.compareTo(end) < 0;
+  }
+
+  public int compareTo(Interval<C> other){
+    int comparison = start.compareTo(other.start);
+    return (comparison != 0) ? comparison : end.compareTo(other.end);
+  }
+
+  public boolean equals(Object other){
+    if (!(other instanceof Interval)){
+      return false;
+    }
+    Interval<?> interval = (Interval<?>)other;
+    return start.equals(interval.start) && end.equals(interval.end);
+  }
+
+  public int hashCode(){
+    return 31 * start.hashCode() + end.hashCode();
+  }
+
+  public String toString(){
+    return "[" + start + ", " + end + ")";
+  }
+}
@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * IntervalTree is a LinkedBinarySearchTree of half-open intervals, ordered
+ * by their start, whose nodes also store the greatest end of the intervals
+ * in their subtree. The value is recomputed by update(), which every
+ * rotation, rebalance and retrace already calls for the nodes whose
+ * subtrees change, so insertions, removals, splits and joins keep it
+ * correct at no more than a constant cost per node they touch.
+ *
+ * A stabbing or overlap query skips every subtree whose greatest end is
+ * not past the query, and every right subtree whose intervals start after
+ * it, so each subtree it enters holds an interval it reports. With k
+ * intervals reported it takes O(log n + k log(n / k + 1)) time, close to
+ * O(log n + k) when the matches lie near each other in start order,
+ * instead of the O(n) of a scan of the whole tree.
+ */
+public class IntervalTree<C extends Comparable<? super C>>
+  extends LinkedBinarySearchTree<Interval<C>>{
+
+  /**
+   * IntervalNode is a node that also holds the greatest end of the
+   * intervals in its subtree.
+   */
+  private static class IntervalNode<C extends Comparable<? super C>>
+    extends BinaryTreeNode<Interval<C>>{
+    private C maxEnd;
+
+    private IntervalNode(Interval<C> interval){
+      super(interval);
+      maxEnd = interval.getEnd();
+    }
+  }
+
+  /**
+   * Creates an empty interval tree.
+   */
+  public IntervalTree(){
+    super();
+  }
+
+  /**
+   * Creates an empty interval tree that, if multiset is true, counts equal
+   * intervals in a single node instead of adding a node for each.
+   *
+   * @param multiset whether equal intervals share a node
+   */
+  public IntervalTree(boolean multiset){
+    super(multiset);
+  }
+
+  /**
+   * Adds the interval [start, end) to this tree.
+   *
+   * @param start the first point of the interval
+   * @param end the first point past the interval
+   * @throws IllegalArgumentException if start is greater than end
+   */
+  public void addInterval(C start, C end){
+    addElement(new Interval<C>(start, end));
+  }
+
+  /**
+   * Returns the intervals of this tree that hold the specified point, in
+   * ascending order.
+   *
+   * @param point the point to look up
+   * @return the intervals [start, end) with start <= point < end
+   */
+  public List<Interval<C>> stabbing(C point){
+    List<Interval<C>> result = new ArrayList<Interval<C>>();
+    stabbing(point, result::add);
+    return result;
+  }
+
+  /**
+   * Performs the action for each interval of this tree that holds the
+   * specified point, in ascending order.
+   *
+   * @param point the point to look up
+   * @param action the action to perform on each interval found
+   */
+  public void stabbing(C point, Consumer<? super Interval<C>> action){
+    search(root, point, point, true, action);
+  }
+
+  /**
+   * Returns the intervals of this tree that share a point with [from, to),
+   * in ascending order.
+   *
+   * @param from the start of the query interval
+   * @param to the end of the query interval
+   * @return the intervals [start, end) with start < to and from < end
+   */
+  public List<Interval<C>> overlapping(C from, C to){
+    List<Interval<C>> result = new ArrayList<Interval<C>>();
+    overlapping(from, to, result::add);
+    return result;
+  }
+
+  /**
+   * Performs the action for each interval of this tree that shares a point
+   * with [from, to), in ascending order.
+   *
+   * @param from the start of the query interval
+   * @param to the end of the query interval
+   * @param action the action to perform on each interval found
+   */
+  public void overlapping(C from, C to, Consumer<? super Interval<C>> action){
+    search(root, from, to, false, action);
+  }
+
+  /**
+   * Returns true if some interval of this tree shares a point with
+   * [from, to), in O(log n) time.
+   *
+   * @param from the start of the query interval
+   * @param to the end of the query interval
+   * @return true if an interval overlaps the query interval
+   */
+  public boolean overlapsAny(C from, C to){
+    BinaryTreeNode<Interval<C>> current = root;
+    while (current != null){
+      Interval<C> interval = current.element;
+      if (interval.overlaps(from, to)){
+        return true;
+      }
+      // if the left holds an end past "from" but no overlap, the interval
+      // with that end starts at or after "to", and so does every interval
+      // on the right
+      if (current.left != null && from.compareTo(maxEnd(current.left)) < 0){
+        current = current.left;
+      }else{
+        current = current.right;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the intervals of the other tree to this one, which must be an
+   * IntervalTree as well so that its nodes carry their greatest ends.
+   *
+   * @param other the tree whose intervals are added
+   * @throws IllegalArgumentException if the other tree is not an IntervalTree
+   */
+  public void union(LinkedBinarySearchTree<Interval<C>> other){
+    if (!(other instanceof IntervalTree)){
+      throw new IllegalArgumentException("Cannot unite an interval tree and "
+        + "a tree of other nodes");
+    }
+    super.union(other);
+  }
+
+  protected BinaryTreeNode<Interval<C>> newNode(Interval<C> element){
+    return new IntervalNode<C>(element);
+  }
+
+  /**
+   * Recomputes the height, the subtree size and the greatest end stored in
+   * the specified node from its interval and the values stored in its
+   * children. The nodes of a plain tree taken apart by intersection() or
+   * difference() only have their height and size updated.
+   *
+   * @param node the node to update
+   */
+  protected void update(BinaryTreeNode<Interval<C>> node){
+    super.update(node);
+    if (node instanceof IntervalNode){
+      C maxEnd = node.element.getEnd();
+      if (node.left instanceof IntervalNode){
+        maxEnd = later(maxEnd, maxEnd(node.left));
+      }
+      if (node.right instanceof IntervalNode){
+        maxEnd = later(maxEnd, maxEnd(node.right));
+      }
+      ((IntervalNode<C>)node).maxEnd = maxEnd;
+    }
+  }
+
+  /**
+   * Reports, in ascending order, the intervals of the subtree that start
+   * before "to" (or at it, if closed) and end after "from". The loop walks
+   * down the right spine and recurses on the left, so the stack grows only
+   * with the height of the tree.
+   */
+  private void search(BinaryTreeNode<Interval<C>> node, C from, C to,
+    boolean closed, Consumer<? super Interval<C>> action){
+    while (node != null && from.compareTo(maxEnd(node)) < 0){
+      search(node.left, from, to, closed, action);
+      Interval<C> interval = node.element;
+      int comparison = interval.getStart().compareTo(to);
+      if (comparison > 0 || (comparison == 0 && !closed)){
+        // the intervals on the right start later still
+        return;
+      }
+      if (from.compareTo(interval.getEnd()) < 0){
+        for (int i = 0; i < node.count; i++){
+          action.accept(interval);
+        }
+      }
+      node = node.right;
+    }
+  }
+
+  private C maxEnd(BinaryTreeNode<Interval<C>> node){
+    return ((IntervalNode<C>)node).maxEnd;
+  }
+
+  private C later(C a, C b){
+    return (a.compareTo(b) >= 0) ? a : b;
+  }
+}
@@ -1,14 +1,81 @@
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
 /**
  * LinkedBinarySearchTree implements the BinarySearchTreeADT interface
  * with links.
+ *
+ * A tree created as a multiset keeps all the occurrences of an element in
+ * a single node with an occurrence count, so adding a duplicate creates no
+ * node and removing every occurrence of an element is a single deletion.
+ * Sizes, ranks, iterators and traversals count each occurrence.
  */
 public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
   implements BinarySearchTreeADT<T>{
+  private final boolean multiset;
+  private final Comparator<? super T> comparator;   // null for natural order
+
+  // counts the changes made to this tree, so that fingers, the last hit
+  // and the extremes can tell whether the nodes they remember are still
+  // where they were
+  private int modCount;
+  private boolean cacheLastHit;
+  private BinaryTreeNode<T> lastHit;
+  private int lastHitModCount;
+
+  // the nodes of the least and highest elements, known while
+  // extremesModCount equals modCount; insertions and removals at either
+  // end keep them up to date, and any other change makes findMin() and
+  // findMax() look for them again
+  private BinaryTreeNode<T> minNode, maxNode;
+  private int extremesModCount = -1;
+
   /**
    * Creates an empty binary search tree.
    */
   public LinkedBinarySearchTree(){
       super();
+      multiset = false;
+      comparator = null;
+  }
+
+  /**
+   * Creates an empty binary search tree that, if multiset is true, counts
+   * equal elements in a single node instead of adding a node for each.
+   *
+   * @param multiset whether equal elements share a node
+   */
+  public LinkedBinarySearchTree(boolean multiset){
+    this(multiset, null);
+  }
+
+  /**
+   * Creates an empty binary search tree ordered by the comparator, or by
+   * the natural order of its elements if the comparator is null.
+   *
+   * @param multiset whether equal elements share a node
+   * @param comparator the order of the tree, or null
+   */
+  LinkedBinarySearchTree(boolean multiset, Comparator<? super T> comparator){
+    super();
+    this.multiset = multiset;
+    this.comparator = comparator;
   }
 
   /**
@@ -19,23 +86,369 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    */
   public LinkedBinarySearchTree(T element){
     super(element);
+    multiset = false;
+    comparator = null;
 
     if (!(element instanceof Comparable)){
       throw new NonComparableElementException("LinkedBinarySearchTree");
     }
   }
 
+  /**
+   * Creates a balanced binary search tree from the first n elements of an
+   * iterator that returns them in ascending order. The tree is built bottom
+   * up in O(n) time; the only comparisons made are the n - 1 checks that
+   * each element is not less than the one before it.
+   *
+   * @param elements an iterator over the elements in ascending order
+   * @param n the number of elements to take from the iterator
+   * @return a new binary search tree holding the n elements
+   * @throws IllegalArgumentException if the elements are not in order
+   * @throws NonComparableElementException if an element is not comparable
+   * @throws NoSuchElementException if the iterator has fewer than n elements
+   */
+  public static <T> LinkedBinarySearchTree<T> fromSorted(Iterator<T> elements,
+    int n){
+    if (n < 0){
+      throw new IllegalArgumentException("Negative size: " + n);
+    }
+    LinkedBinarySearchTree<T> tree = new LinkedBinarySearchTree<T>();
+    tree.root = tree.buildSorted(new SortedIterator<T>(elements), n);
+    return tree;
+  }
+
+  /**
+   * Builds a balanced binary search tree of the elements of an unsorted
+   * array. See build(T[], Comparator, int, boolean).
+   *
+   * @param data the elements, which are not changed
+   * @param comparator the order of the tree, or null for natural order
+   * @param parallelism the number of threads to build with
+   * @return a new binary search tree holding the elements
+   * @throws IllegalArgumentException if parallelism is less than 1
+   * @throws NonComparableElementException if the comparator is null and an
+   *         element is not comparable
+   */
+  public static <T> LinkedBinarySearchTree<T> build(T[] data,
+    Comparator<? super T> comparator, int parallelism){
+    return build(data, comparator, parallelism, false);
+  }
+
+  /**
+   * Builds a balanced binary search tree of the elements of an unsorted
+   * array, with the specified number of threads. A copy of the array is
+   * sorted with Arrays.parallelSort and, if distinct is true, cleared of
+   * all but the first of each run of equal elements; the tree is then
+   * assembled bottom up, its two halves at each level in parallel, with
+   * heights and sizes set as the nodes are linked. The work runs in a
+   * ForkJoinPool of its own, which is shut down afterwards, and takes
+   * O(n log n / p) time on p threads apart from the pass for distinct.
+   * Note that parallelSort divides its work according to the parallelism
+   * of the common pool, and sorts on one thread when that is 1.
+   *
+   * @param data the elements, which are not changed
+   * @param comparator the order of the tree, or null for natural order
+   * @param parallelism the number of threads to build with
+   * @param distinct whether to keep only one of each set of equal elements
+   * @return a new binary search tree holding the elements
+   * @throws IllegalArgumentException if parallelism is less than 1
+   * @throws NonComparableElementException if the comparator is null and an
+   *         element is not comparable
+   */
+  public static <T> LinkedBinarySearchTree<T> build(T[] data,
+    Comparator<? super T> comparator, int parallelism, boolean distinct){
+    if (parallelism < 1){
+      throw new IllegalArgumentException("Parallelism " + parallelism);
+    }
+    LinkedBinarySearchTree<T> tree =
+      new LinkedBinarySearchTree<T>(false, comparator);
+    T[] sorted = Arrays.copyOf(data, data.length);
+    if (parallelism == 1){
+      tree.root = tree.assemble(sorted, distinct);
+      return tree;
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try{
+      tree.root = pool.invoke(ForkJoinTask.adapt(
+        () -> tree.assemble(sorted, distinct)));
+    }finally{
+      pool.shutdown();
+    }
+    return tree;
+  }
+
+  /**
+   * Sorts the array in place and assembles its elements into a balanced
+   * subtree, in parallel if called in a ForkJoinPool.
+   *
+   * @param sorted the elements, sorted here
+   * @param distinct whether to drop elements equal to the one before
+   * @return the root of the new subtree
+   */
+  private BinaryTreeNode<T> assemble(T[] sorted, boolean distinct){
+    try{
+      Arrays.parallelSort(sorted, comparator);
+    }catch (ClassCastException e){
+      if (comparator != null){
+        throw e;
+      }
+      throw new NonComparableElementException("LinkedBinarySearchTree");
+    }
+    int n = sorted.length;
+    if (distinct && n > 0){
+      n = 1;
+      for (int i = 1; i < sorted.length; i++){
+        if (compare(sorted[n - 1], sorted[i]) != 0){
+          sorted[n++] = sorted[i];
+        }
+      }
+    }
+    return assemble(sorted, 0, n);
+  }
+
+  /**
+   * Links sorted[from] to sorted[to - 1] into a perfectly balanced subtree,
+   * forking the left half when called in a ForkJoinPool on enough elements.
+   *
+   * @param sorted the elements in ascending order
+   * @param from the index of the first element
+   * @param to the index after the last element
+   * @return the root of the new subtree
+   */
+  private BinaryTreeNode<T> assemble(T[] sorted, int from, int to){
+    if (from == to){
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    BinaryTreeNode<T> node = newNode(sorted[middle]);
+    if (ForkJoinTask.inForkJoinPool() && to - from >= SEQUENTIAL_THRESHOLD){
+      Assembly task = new Assembly(sorted, from, middle);
+      task.fork();
+      node.right = assemble(sorted, middle + 1, to);
+      node.left = task.join();
+    }else{
+      node.left = assemble(sorted, from, middle);
+      node.right = assemble(sorted, middle + 1, to);
+    }
+    update(node);
+    return node;
+  }
+
+  /**
+   * Builds a perfectly balanced subtree from the next n elements of an
+   * iterator, which must return them in ascending order. Heights and sizes
+   * are set as the nodes are created, so no rebalancing is needed.
+   *
+   * @param elements an iterator over the elements in ascending order
+   * @param n the number of elements in the subtree
+   * @return the root of the new subtree
+   */
+  protected BinaryTreeNode<T> buildSorted(Iterator<T> elements, int n){
+    if (n == 0){
+      return null;
+    }
+    BinaryTreeNode<T> left = buildSorted(elements, n / 2);
+    BinaryTreeNode<T> node = newNode(elements.next());
+    node.left = left;
+    node.right = buildSorted(elements, n - n / 2 - 1);
+    update(node);
+    return node;
+  }
+
+  /**
+   * Writes the elements of this tree to the channel in ascending order, in
+   * a compact binary format from which readSnapshot rebuilds the tree. The
+   * snapshot is not checksummed.
+   *
+   * @param channel the channel to write to
+   * @param codec the codec for the elements
+   * @throws IOException if writing to the channel fails
+   */
+  public void writeSnapshot(WritableByteChannel channel, Codec<T> codec)
+    throws IOException{
+    writeSnapshot(channel, codec, false);
+  }
+
+  /**
+   * Writes the elements of this tree to the channel in ascending order, in
+   * a compact binary format from which readSnapshot rebuilds the tree: a
+   * small header, then each element as encoded by the codec, preceded by
+   * its length if the codec is not fixed-width. If checksum is true, the
+   * snapshot ends with a CRC-32C that readSnapshot verifies.
+   *
+   * @param channel the channel to write to
+   * @param codec the codec for the elements
+   * @param checksum whether to end the snapshot with a checksum
+   * @throws IOException if writing to the channel fails
+   */
+  public void writeSnapshot(WritableByteChannel channel, Codec<T> codec,
+    boolean checksum) throws IOException{
+    TreeSnapshot.Writer<T> writer = new TreeSnapshot.Writer<T>(channel,
+      codec, nodeCount(), multiset, checksum);
+    for (InOrderIterator<T> i = new InOrderIterator<T>(root); i.hasNext(); ){
+      writer.write(i.nextNode());
+    }
+    writer.finish();
+  }
+
+  /**
+   * Reads a tree written by writeSnapshot. The tree is built bottom up in
+   * O(n) time with no comparisons, the elements being trusted to be in the
+   * order they were written in; a checksummed snapshot is verified once
+   * all of it has been read.
+   *
+   * @param channel the channel to read from
+   * @param codec the codec the snapshot was written with
+   * @return a new binary search tree holding the elements of the snapshot
+   * @throws IOException if reading fails, the snapshot ends early or its
+   *         checksum does not match
+   * @throws IllegalArgumentException if the channel does not hold a
+   *         snapshot written with a codec of the same width
+   */
+  public static <T> LinkedBinarySearchTree<T> readSnapshot(
+    ReadableByteChannel channel, Codec<T> codec) throws IOException{
+    return readSnapshot(channel, codec, null);
+  }
+
+  /**
+   * Reads a tree written by writeSnapshot from a tree ordered by the
+   * comparator, which the snapshot does not record.
+   *
+   * @param channel the channel to read from
+   * @param codec the codec the snapshot was written with
+   * @param comparator the order of the tree, or null for natural order
+   * @return a new binary search tree holding the elements of the snapshot
+   * @throws IOException if reading fails, the snapshot ends early or its
+   *         checksum does not match
+   * @throws IllegalArgumentException if the channel does not hold a
+   *         snapshot written with a codec of the same width
+   */
+  public static <T> LinkedBinarySearchTree<T> readSnapshot(
+    ReadableByteChannel channel, Codec<T> codec,
+    Comparator<? super T> comparator) throws IOException{
+    TreeSnapshot.Reader<T> reader = new TreeSnapshot.Reader<T>(channel, codec);
+    LinkedBinarySearchTree<T> tree =
+      new LinkedBinarySearchTree<T>(reader.isMultiset(), comparator);
+    tree.root = tree.buildSnapshot(reader, reader.records());
+    reader.finish();
+    return tree;
+  }
+
+  /**
+   * Builds a perfectly balanced subtree from the next n records of a
+   * snapshot, as buildSorted does from an iterator.
+   *
+   * @param reader the reader positioned at the first record
+   * @param n the number of nodes in the subtree
+   * @return the root of the new subtree
+   * @throws IOException if the snapshot cannot be read
+   */
+  private BinaryTreeNode<T> buildSnapshot(TreeSnapshot.Reader<T> reader, int n)
+    throws IOException{
+    if (n == 0){
+      return null;
+    }
+    BinaryTreeNode<T> left = buildSnapshot(reader, n / 2);
+    BinaryTreeNode<T> node = reader.read();
+    node.left = left;
+    node.right = buildSnapshot(reader, n - n / 2 - 1);
+    update(node);
+    return node;
+  }
+
+  /**
+   * Called by every operation before it changes the nodes of this tree.
+   * Trees whose nodes are shared, such as the snapshots of a
+   * PersistentBinarySearchTree, override it to refuse the change.
+   *
+   * @throws UnsupportedOperationException if this tree cannot be changed
+   */
+  protected void checkModifiable(){
+  }
+
+  /**
+   * Checks that this tree can be changed and records that it is about to
+   * be.
+   */
+  private void modifying(){
+    checkModifiable();
+    modCount++;
+  }
+
+  /**
+   * Returns the number of nodes in this tree, which is its size unless it
+   * is a multiset, whose nodes have to be counted.
+   *
+   * @return the number of nodes
+   */
+  private int nodeCount(){
+    if (!multiset){
+      return size();
+    }
+    int nodes = 0;
+    for (InOrderIterator<T> i = new InOrderIterator<T>(root); i.hasNext(); nodes++){
+      i.nextNode();
+    }
+    return nodes;
+  }
+
+  /**
+   * Returns the estimated number of bytes the nodes of this tree take on
+   * the heap per element, to help size heaps. The elements themselves are
+   * not included. A node holds three references and three ints, which
+   * CompactAVLTree cuts down to a single byte.
+   *
+   * @return the bytes taken by the nodes per element, 0 if the tree is empty
+   */
+  public double bytesPerElement(){
+    if (isEmpty()){
+      return 0;
+    }
+    return (double)nodeCount() * Footprint.objectBytes(3, 12) / size();
+  }
+
+  /**
+   * Returns true if this tree counts equal elements in a single node.
+   *
+   * @return true if this tree is a multiset
+   */
+  public boolean isMultiset(){
+    return multiset;
+  }
+
+  /**
+   * Returns the comparator that orders this tree, or null if it is ordered
+   * by the natural order of its elements.
+   *
+   * @return the comparator, or null
+   */
+  public Comparator<? super T> comparator(){
+    return comparator;
+  }
+
+  /**
+   * Throws NonComparableElementException if this tree is in natural order
+   * and the element has none.
+   */
+  private void checkComparable(T element){
+    if (comparator == null && !(element instanceof Comparable)){
+      throw new NonComparableElementException("LinkedBinarySearchTree");
+    }
+  }
+
   /**
    * Adds the specified object to the binary search tree in the
    * appropriate position according to its natural order.  Note that
-   * equal elements are added to the right.
+   * equal elements are added to the right, or counted in the node of the
+   * element they equal if this tree is a multiset.
    *
    * @param element the element to be added to the binary search tree
    */
   public void addElement(T element){
-    if (!(element instanceof Comparable)){
-      throw new NonComparableElementException("LinkedBinarySearchTree");
-    }
+    checkComparable(element);
+
+    boolean extremesKnown = (extremesModCount == modCount) || isEmpty();
+    modifying();
 
     //if (isEmpty()){
     //  root = new BinaryTreeNode<T>(element);
@@ -44,6 +457,9 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
     //}
 
     root = addElementAVL(element, root);
+    if (extremesKnown){
+      extremesModCount = modCount;
+    }
   }
 
   /**
@@ -54,72 +470,210 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    * @param element the element to be added to the binary search tree
    */
   private void addElement(T element, BinaryTreeNode<T> node){
-    Comparable<T> comparableElement = (Comparable<T>)element;
-
-    if (comparableElement.compareTo(node.getElement()) < 0){
+    node.size++;
+    if (compare(element, node.getElement()) < 0){
       // go left
       if (node.left == null){
-        node.left = new BinaryTreeNode<T>(element);
+        node.left = newNode(element);
       }else{
         addElement(element, node.left);
       }
     }else{
       // go right
       if (node.right == null){
-        node.right = new BinaryTreeNode<T>(element);
+        node.right = newNode(element);
       }else{
         addElement(element, node.right);
       }
     }
   }
 
+  /**
+   * Compares two elements by the comparator of this tree, or by their
+   * natural order if it has none. Every comparison the tree makes goes
+   * through this method, so a subclass can count them.
+   *
+   * @param a the first element
+   * @param b the second element
+   * @return a negative integer, zero or a positive integer as a is less
+   *         than, equal to or greater than b
+   */
+  protected int compare(T a, T b){
+    if (comparator != null){
+      return comparator.compare(a, b);
+    }
+    return ((Comparable<T>)a).compareTo(b);
+  }
+
   private int balanceFactor(BinaryTreeNode<T> node){
     return height(node.right) - height(node.left);
   }
 
-  private BinaryTreeNode<T> addElementAVL(T element, BinaryTreeNode<T> node){
-    Comparable<T> comparableElement = (Comparable<T>)element;
-
-    if(node == null){
-      // empty spot? add/insert a new node here.
-      node = new BinaryTreeNode<T>(element);
-    }else if(comparableElement.compareTo(node.getElement()) < 0){
-      // insert in left subtree.
-      node.left = addElementAVL(element, node.left);
-      // AFTER inserting, it is possible the tree is out of balance, so check
-      // balance factors
-      if(balanceFactor(node) == -2){
-        // if true, left subtree too tall
-        // decide what sort of rotation will fix the problem
-        if(balanceFactor(node.left) < 0 ){
-          // left subtree of left child is too tall
-          // fix with a single right rotation
-          node = singleRightRotation(node);
-        }else{
-          // right subtree of left child is too tall
-          // so double rotation is necessary
-          node = doubleLeftRightRotation(node);
-        }
+  /**
+   * Restores the AVL property at the specified node, whose subtrees may
+   * differ in height by at most two, and recomputes its height and size.
+   * Unlike an insertion, a deletion can leave the taller child balanced,
+   * in which case a single rotation is enough.
+   *
+   * @param node the root of the subtree to rebalance
+   * @return the new root of the subtree
+   */
+  private BinaryTreeNode<T> rebalance(BinaryTreeNode<T> node){
+    update(node);
+    if(balanceFactor(node) == -2){
+      // left subtree too tall
+      // decide what sort of rotation will fix the problem
+      if(balanceFactor(node.left) <= 0){
+        // left subtree of left child is too tall (or as tall as its
+        // sibling) so a single right rotation fixes it
+        node = singleRightRotation(node);
+      }else{
+        // right subtree of left child is too tall
+        // so double rotation is necessary
+        node = doubleLeftRightRotation(node);
       }
-    }else{
-      // insert in right subtree
+    }else if(balanceFactor(node) == 2){
+      // right subtree too tall
       // shown below is simply the mirror image of what we did above
-      node.right = addElementAVL(element, node.right);
-      if(balanceFactor(node) == 2 ){
-        // if true, right subtree too tall
-        // decide what sort of rotation will fix the problem
-        if(balanceFactor(node.right) > 0 ){
-          node = singleLeftRotation(node);
-        }else{
-          node = doubleRightLeftRotation(node);
-        }
+      if(balanceFactor(node.right) >= 0){
+        node = singleLeftRotation(node);
+      }else{
+        node = doubleRightLeftRotation(node);
       }
     }
+    return node;
+  }
+
+  /**
+   * Creates the node for a new element. Every node this tree adds is made
+   * here, so that a subclass can use nodes of its own that carry more
+   * information, kept up to date by overriding update().
+   *
+   * @param element the element of the node
+   * @return a new unlinked node
+   */
+  protected BinaryTreeNode<T> newNode(T element){
+    return new BinaryTreeNode<T>(element);
+  }
 
-    // We are done, but now we need to reset the height of this node after the
-    // insertion
+  /**
+   * Recomputes the height and the subtree size stored in the specified node
+   * from the values stored in its children.
+   *
+   * @param node the node to update
+   */
+  protected void update(BinaryTreeNode<T> node){
     node.height = Math.max(height(node.left), height(node.right)) + 1;
-    return node;
+    node.size = size(node.left) + size(node.right) + node.count;
+  }
+
+  /**
+   * Inserts the element into the subtree rooted at "node" and returns the
+   * new root of the subtree. The search path is recorded in an array sized
+   * from the height of the subtree, and the tree is then rebalanced bottom
+   * up without recursion (see retrace). In a multiset an element equal to
+   * one on the path is counted in that node, and the tree keeps its shape.
+   *
+   * @param element the element to be added
+   * @param node the root of the subtree
+   * @return the new root of the subtree
+   */
+  private BinaryTreeNode<T> addElementAVL(T element, BinaryTreeNode<T> node){
+    BinaryTreeNode<T>[] path = newPath(node);
+    boolean[] wentLeft = new boolean[path.length];
+    int depth = 0;
+    boolean leftmost = true;
+    boolean rightmost = true;
+
+    // walk down to the empty spot, remembering the way
+    BinaryTreeNode<T> current = node;
+    while(current != null){
+      int comparison = compare(element, current.getElement());
+      if (multiset && comparison == 0){
+        current.count++;
+        resize(path, depth + 1, current, 1);
+        return node;
+      }
+      path[depth] = current;
+      wentLeft[depth] = comparison < 0;
+      leftmost = leftmost && wentLeft[depth];
+      rightmost = rightmost && !wentLeft[depth];
+      current = wentLeft[depth] ? current.left : current.right;
+      depth++;
+    }
+
+    // add/insert a new node there and fix the balance on the way back up
+    BinaryTreeNode<T> leaf = newNode(element);
+    if (leftmost){
+      minNode = leaf;
+    }
+    if (rightmost){
+      maxNode = leaf;
+    }
+    return retrace(path, wentLeft, depth, leaf);
+  }
+
+  /**
+   * Returns an array large enough to hold a search path from the specified
+   * node down to a new leaf.
+   *
+   * @param node the root of the subtree to be searched
+   * @return an empty path array
+   */
+  protected BinaryTreeNode<T>[] newPath(BinaryTreeNode<T> node){
+    return (BinaryTreeNode<T>[])new BinaryTreeNode[height(node) + 2];
+  }
+
+  /**
+   * Adds the change to the stored sizes of the nodes on a search path, for
+   * when an occurrence count has changed and the shape of the tree has not.
+   *
+   * @param path the nodes on the search path, path[0] being the top
+   * @param depth the number of nodes on the path, counting the last one
+   * @param last the last node on the path, which may not be stored yet
+   * @param change the change in the number of elements
+   */
+  private void resize(BinaryTreeNode<T>[] path, int depth,
+    BinaryTreeNode<T> last, int change){
+    path[depth - 1] = last;
+    for (int i = 0; i < depth; i++){
+      path[i].size += change;
+    }
+  }
+
+  /**
+   * Walks back up a recorded search path after the subtree hanging below
+   * path[depth - 1] has been replaced by "child". Every ancestor is relinked
+   * and rebalanced until one keeps its old height; nothing above that node
+   * can be out of balance, so from there on only the stored sizes are
+   * refreshed.
+   *
+   * @param path the nodes on the search path, path[0] being the top
+   * @param wentLeft whether the search went left at each node of the path
+   * @param depth the number of nodes on the path
+   * @param child the replacement for the subtree below the path
+   * @return the new root of the subtree rooted at path[0]
+   */
+  protected BinaryTreeNode<T> retrace(BinaryTreeNode<T>[] path,
+    boolean[] wentLeft, int depth, BinaryTreeNode<T> child){
+    boolean balancing = true;
+    for(int i = depth - 1; i >= 0; i--){
+      BinaryTreeNode<T> parent = path[i];
+      if(wentLeft[i]){
+        parent.left = child;
+      }else{
+        parent.right = child;
+      }
+      if(balancing){
+        int oldHeight = parent.height;
+        child = rebalance(parent);
+        balancing = (child.height != oldHeight);
+      }else{
+        update(parent);
+        child = parent;
+      }
+    }
+    return child;
   }
 
   /**
@@ -128,37 +682,68 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    * found in this binary tree.  Throws a ElementNotFoundException if
    * the specified target element is not found in the binary tree.
    *
+   * If the last hit cache is on, a search for the element found last
+   * makes no comparisons while the tree is unchanged.
+   *
    * @param targetElement the element being sought in this tree
    * @return a reference to the specified target
    * @throws ElementNotFoundException if the element is not in the tree
    */
   public T find(T targetElement) throws ElementNotFoundException{
+    BinaryTreeNode<T> hit = lastHit;
+    if (hit != null && lastHitModCount == modCount
+        && hit.element.equals(targetElement)){
+      return hit.element;
+    }
+
     BinaryTreeNode<T> current = findNode(targetElement, root);
 
     if (current == null){
      return null; 
     }
+    if (cacheLastHit){
+      lastHit = current;
+      lastHitModCount = modCount;
+    }
     return (current.getElement());
   }
 
+  /**
+   * Turns the last hit cache on or off. While it is on, find() and
+   * contains() remember the node they found last, and a repeated search
+   * for the same element is answered from it with a single equals() call,
+   * which suits lookups that keep returning to a hot element.
+   *
+   * @param enabled whether to remember the last node found
+   */
+  public void setLastHitCache(boolean enabled){
+    cacheLastHit = enabled;
+    lastHit = null;
+  }
 
-  private BinaryTreeNode<T> findNode(T targetElement,
-                                     BinaryTreeNode<T> next){
-    if (next == null){
-      return null;
-    }
+  /**
+   * Returns a new finger on this tree, for runs of searches and insertions
+   * of elements that lie close to each other.
+   *
+   * @return a finger positioned at the root
+   */
+  public Finger finger(){
+    return new Finger();
+  }
 
-    if (next.getElement().equals(targetElement)){
-      return next;
-    }
 
-    if (((Comparable)targetElement).compareTo(next.getElement())<=0){
-      // go Left
-      return findNode(targetElement, next.getLeft());
-    }else{
-      // go right 
-      return findNode(targetElement, next.getRight());
+  private BinaryTreeNode<T> findNode(T targetElement,
+                                     BinaryTreeNode<T> next){
+    while (next != null && !next.getElement().equals(targetElement)){
+      if (compare(targetElement, next.getElement()) <= 0){
+        // go Left
+        next = next.getLeft();
+      }else{
+        // go right
+        next = next.getRight();
+      }
     }
+    return next;
   }
 
   /**
@@ -172,34 +757,47 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    */
   public void removeElement(T targetElement)
     throws ElementNotFoundException{
-    root = removeElement(targetElement, root);
+    modifying();
+    root = removeElement(targetElement, root, false);
   }
 
   /**
    * Removes the first element that matches the specified target
    * element from the binary search tree starting from "node".
    * Throws a ElementNotFoundException if the specified target
-   * element is not found in the binary search tree.
+   * element is not found in the binary search tree. In a multiset the
+   * node is only removed with its last occurrence, or if "all" is true.
    *
    * @param targetElement the element being sought in the binary search tree
    * @param node the node from which to search
-   * @return the reference to a replacement node for "node"
+   * @param all whether to remove every occurrence held by the node
+   * @return the reference to a replacement node for "node", rebalanced
    * @throws ElementNotFoundException if the target element is not found
    */
-  private BinaryTreeNode<T> removeElement(T targetElement, BinaryTreeNode<T> node)
-    throws ElementNotFoundException{
-    if (node == null){
+  private BinaryTreeNode<T> removeElement(T targetElement, BinaryTreeNode<T> node,
+    boolean all) throws ElementNotFoundException{
+    BinaryTreeNode<T>[] path = newPath(node);
+    boolean[] wentLeft = new boolean[path.length];
+    int depth = 0;
+
+    BinaryTreeNode<T> current = node;
+    while (current != null && !targetElement.equals(current.element)){
+      path[depth] = current;
+      wentLeft[depth] = compare(targetElement, current.element) < 0;
+      current = wentLeft[depth] ? current.left : current.right;
+      depth++;
+    }
+    if (current == null){
       throw new ElementNotFoundException("LinkedBinarySearchTree");
-    }else{
-      if (((Comparable<T>)targetElement).equals(node.element)){
-        node = remove(node);
-      }else if (((Comparable)targetElement).compareTo(node.element) < 0){
-        node.left = removeElement(targetElement, node.left);
-      }else{
-        node.right = removeElement(targetElement, node.right);
-      }
     }
-    return node;
+    if (!all && current.count > 1){
+      current.count--;
+      resize(path, depth + 1, current, -1);
+      return node;
+    }
+
+    // the subtrees we came back through may have shrunk, so check the balance
+    return retrace(path, wentLeft, depth, remove(current));
   }
 
   /**
@@ -207,44 +805,90 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    * if the node has no children, return null.
    * if the node has online one child, return that child.
    * if the node has two children, return the inorder successor of
-   * the node to be removed.
+   * the node to be removed, after unlinking it from the right subtree
+   * and rebalancing.
    *
    * @param node the node to remove
    * @return the reference to a replacement node for "node"
    */
-  private BinaryTreeNode<T> remove(BinaryTreeNode<T> node){
+  protected BinaryTreeNode<T> remove(BinaryTreeNode<T> node){
     if(node.left == null){       // CASE 1: Right Child Only
       return node.right;           // attach right subtree
     }else if(node.right == null){  // CASE 2: Left Child Only
       return node.left;             // attach left subtree
     }else{                              // CASE 3: both L & R children
-      BinaryTreeNode<T> parent = node;   // remove the min in this subtree
-      BinaryTreeNode<T> current = node.right;
-      if(current.left == null){     // special case: if the current right
-        current.left = parent.left; // has no left subtree.
-      }else{
-        while (current.left != null){ // traverse to find the replacement node
-          parent = current;
-          current = current.left;
-        }
-        parent.left = current.right;
-        current.left = node.left;
-        current.right = node.right;
+      BinaryTreeNode<T>[] path = newPath(node.right);
+      boolean[] wentLeft = new boolean[path.length];
+      int depth = 0;
+      BinaryTreeNode<T> current = node.right; // the min in the right subtree
+      while (current.left != null){           // is the replacement node
+        path[depth] = current;
+        wentLeft[depth] = true;
+        depth++;
+        current = current.left;
       }
-      return current;
+      current.right = retrace(path, wentLeft, depth, current.right);
+      current.left = node.left;
+      return rebalance(current);
+    }
+  }
+
+  /**
+   * Unlinks the node with the least value from the subtree rooted at
+   * "node", rebalancing on the way back up the left spine.
+   *
+   * @param node the root of the subtree
+   * @return the new root of the subtree
+   */
+  private BinaryTreeNode<T> removeMin(BinaryTreeNode<T> node){
+    BinaryTreeNode<T>[] path = newPath(node);
+    boolean[] wentLeft = new boolean[path.length];
+    int depth = 0;
+    while(node.left != null){
+      path[depth] = node;
+      wentLeft[depth] = true;
+      depth++;
+      node = node.left;
+    }
+    return retrace(path, wentLeft, depth, node.right);
+  }
+
+  /**
+   * Unlinks the node with the highest value from the subtree rooted at
+   * "node", rebalancing on the way back up the right spine.
+   *
+   * @param node the root of the subtree
+   * @return the new root of the subtree
+   */
+  private BinaryTreeNode<T> removeMax(BinaryTreeNode<T> node){
+    BinaryTreeNode<T>[] path = newPath(node);
+    boolean[] wentLeft = new boolean[path.length];
+    int depth = 0;
+    while(node.right != null){
+      path[depth] = node;
+      wentLeft[depth] = false;
+      depth++;
+      node = node.right;
     }
+    return retrace(path, wentLeft, depth, node.left);
   }
 
   /**
    * Removes elements that match the specified target element from
    * the binary search tree. Throws a ElementNotFoundException if
-   * the sepcified target element is not found in this tree.
+   * the sepcified target element is not found in this tree. In a multiset
+   * the occurrences share a node, which is removed in O(log n) time.
    *
    * @param targetElement the element being sought in the binary search tree
    * @throws ElementNotFoundException if the target element is not found
    */
   public void removeAllOccurrences(T targetElement)
     throws ElementNotFoundException{
+    if (multiset){
+      modifying();
+      root = removeElement(targetElement, root, true);
+      return;
+    }
     removeElement(targetElement);
     try{
       while (contains((T)targetElement))
@@ -253,47 +897,188 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
   }
 
   /**
-   * Removes the node with the least value from the binary search
-   * tree and returns a reference to its element.  Throws an
-   * EmptyCollectionException if this tree is empty.
+   * Returns the number of occurrences of the specified element in this
+   * tree, found in its node in a multiset and from two ranks otherwise, in
+   * O(log n) time either way.
    *
-   * @return a reference to the node with the least value
-   * @throws EmptyCollectionException if the tree is empty
+   * @param element the element to count
+   * @return the number of elements equal to the element
    */
-  public T removeMin() throws EmptyCollectionException{
-    T result = null;
-
-    if (isEmpty()){
-      throw new EmptyCollectionException("LinkedBinarySearchTree");
-    }else{
-      if (root.left == null){
-        result = root.element;
-        root = root.right;
+  public int count(T element){
+    if (!multiset){
+      return rank(element, true) - rank(element, false);
+    }
+    BinaryTreeNode<T> current = root;
+    while (current != null){
+      int comparison = compare(element, current.element);
+      if (comparison == 0){
+        return current.count;
+      }
+      current = (comparison < 0) ? current.left : current.right;
+    }
+    return 0;
+  }
+
+  /**
+   * Adds all the elements of the specified collection to this tree. The
+   * batch is sorted and built into a balanced subtree, which is merged
+   * with this tree by splitting and joining, so each affected subtree is
+   * rebalanced once. Adding m elements to a tree of n takes
+   * O(m log m + m log(n/m + 1)) time, against O(m log(n + m)) for m calls
+   * of addElement, and large batches are merged in parallel on the common
+   * ForkJoinPool.
+   *
+   * @param elements the elements to be added
+   * @throws NonComparableElementException if an element is not comparable
+   */
+  public void addAll(Collection<T> elements){
+    modifying();
+    root = setOperation(MERGE, root, sortedBatch(elements));
+  }
+
+  /**
+   * Removes all occurrences of every element of the specified collection
+   * from this tree, ignoring the elements that are not in it. The batch is
+   * sorted and built into a subtree, whose elements are then removed in a
+   * single pass as in difference().
+   *
+   * @param elements the elements to be removed
+   * @throws NonComparableElementException if an element is not comparable
+   */
+  public void removeAll(Collection<T> elements){
+    modifying();
+    root = setOperation(DIFFERENCE, root, sortedBatch(elements));
+  }
+
+  /**
+   * Sorts a batch of elements and builds a balanced subtree from them. In
+   * a multiset, equal elements of the batch are counted in one node.
+   *
+   * @param elements the elements of the batch
+   * @return the root of the new subtree
+   */
+  private BinaryTreeNode<T> sortedBatch(Collection<T> elements){
+    Object[] batch = elements.toArray();
+    for (Object element : batch){
+      checkComparable((T)element);
+    }
+    Arrays.sort((T[])batch, comparator);
+    if (!multiset){
+      return buildSorted(Arrays.asList((T[])batch).iterator(), batch.length);
+    }
+    BinaryTreeNode<T>[] nodes = (BinaryTreeNode<T>[])new BinaryTreeNode[batch.length];
+    int n = 0;
+    for (Object element : batch){
+      if (n > 0 && compare(nodes[n - 1].element, (T)element) == 0){
+        nodes[n - 1].count++;
       }else{
-        BinaryTreeNode<T> parent = root;
-        BinaryTreeNode<T> current = root.left;
-        while (current.left != null){
-          parent = current;
-          current = current.left;
-        }
-        result =  current.element;
-        parent.left = current.right;
+        nodes[n++] = newNode((T)element);
       }
     }
-    return result;
+    return link(nodes, 0, n);
+  }
+
+  /**
+   * Links nodes[from] to nodes[to - 1], which are in ascending order, into
+   * a perfectly balanced subtree.
+   *
+   * @param nodes the nodes to link
+   * @param from the index of the first node
+   * @param to the index after the last node
+   * @return the root of the new subtree
+   */
+  private BinaryTreeNode<T> link(BinaryTreeNode<T>[] nodes, int from, int to){
+    if (from == to){
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    BinaryTreeNode<T> node = nodes[middle];
+    node.left = link(nodes, from, middle);
+    node.right = link(nodes, middle + 1, to);
+    update(node);
+    return node;
+  }
+
+  /**
+   * Removes the node with the least value from the binary search
+   * tree and returns a reference to its element.  Throws an
+   * EmptyCollectionException if this tree is empty. In a multiset only
+   * one occurrence is removed. The descent down the left spine also
+   * shrinks the sizes stored on it, and the node that becomes the least
+   * is found next to the removed one, so findMin() stays O(1).
+   *
+   * @return a reference to the node with the least value
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMin() throws EmptyCollectionException{
+    return removeExtreme(false);
   }
 
   /**
    * Removes the node with the highest value from the binary
    * search tree and returns a reference to its element.  Throws an
-   * EmptyCollectionException if this tree is empty.
+   * EmptyCollectionException if this tree is empty. In a multiset only
+   * one occurrence is removed. Like removeMin(), it keeps findMax() O(1).
    *
    * @return a reference to the node with the highest value
    * @throws EmptyCollectionException if the tree is empty
    */
   public T removeMax() throws EmptyCollectionException{
-    // To be completed as a Programming Project
-    return null;
+    return removeExtreme(true);
+  }
+
+  /**
+   * Removes the least (or, if max, the highest) element, in a single
+   * descent of the spine leading to it. Its node holds no child on the
+   * outer side, and at most a leaf on the inner side, so the element that
+   * takes its place at the end is either that leaf or its parent.
+   *
+   * @param max true to remove the highest element, false for the least
+   * @return the removed element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  private T removeExtreme(boolean max) throws EmptyCollectionException{
+    boolean extremesKnown = (extremesModCount == modCount);
+    modifying();
+    if (isEmpty()){
+      throw new EmptyCollectionException("LinkedBinarySearchTree");
+    }
+    BinaryTreeNode<T>[] path = newPath(root);
+    boolean[] wentLeft = new boolean[path.length];
+    int depth = 0;
+    BinaryTreeNode<T> current = root;
+    BinaryTreeNode<T> next = max ? current.right : current.left;
+    while (next != null){
+      path[depth] = current;
+      wentLeft[depth] = !max;
+      depth++;
+      current = next;
+      next = max ? current.right : current.left;
+    }
+
+    if (multiset && current.count > 1){
+      current.count--;
+      resize(path, depth + 1, current, -1);
+    }else{
+      BinaryTreeNode<T> inner = max ? current.left : current.right;
+      root = retrace(path, wentLeft, depth, inner);
+      BinaryTreeNode<T> end = (inner != null) ? inner
+        : (depth > 0) ? path[depth - 1] : null;
+      if (max){
+        maxNode = end;
+      }else{
+        minNode = end;
+      }
+      if (root == null){
+        minNode = null;
+        maxNode = null;
+        extremesKnown = true;
+      }
+    }
+    if (extremesKnown){
+      extremesModCount = modCount;
+    }
+    return current.element;
   }
 
   /**
@@ -305,8 +1090,11 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    * @throws EmptyCollectionException if the tree is empty
    */
   public T findMin() throws EmptyCollectionException{
-    // To be completed as a Programming Project
-    return null;
+    if (isEmpty()){
+      throw new EmptyCollectionException("LinkedBinarySearchTree");
+    }
+    findExtremes();
+    return minNode.element;
   }
 
   /**
@@ -319,33 +1107,859 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
    * @throws EmptyCollectionException if the tree is empty
    */
   public T findMax() throws EmptyCollectionException{
-    // To be completed as a Programming Project
-    return null;
+    if (isEmpty()){
+      throw new EmptyCollectionException("LinkedBinarySearchTree");
+    }
+    findExtremes();
+    return maxNode.element;
+  }
+
+  /**
+   * Walks down both spines of this nonempty tree to the nodes of the least
+   * and highest elements, unless they are known since the last change.
+   */
+  private void findExtremes(){
+    if (extremesModCount != modCount){
+      minNode = min(root);
+      maxNode = max(root);
+      extremesModCount = modCount;
+    }
+  }
+
+  /**
+   * Removes the n smallest elements from this tree, or all of them if it
+   * has fewer, and returns them in ascending order, as n calls of
+   * removeMin() would. The tree is split at rank n in O(log n) time, and
+   * listing the elements takes O(n).
+   *
+   * @param n the number of elements to remove
+   * @return the removed elements in ascending order
+   * @throws IllegalArgumentException if n is negative
+   */
+  public List<T> pollMin(int n){
+    return poll(n, false);
+  }
+
+  /**
+   * Removes the n largest elements from this tree, or all of them if it
+   * has fewer, and returns them in descending order, as n calls of
+   * removeMax() would. The tree is split at rank size() - n in O(log n)
+   * time, and listing the elements takes O(n).
+   *
+   * @param n the number of elements to remove
+   * @return the removed elements in descending order
+   * @throws IllegalArgumentException if n is negative
+   */
+  public List<T> pollMax(int n){
+    return poll(n, true);
+  }
+
+  private List<T> poll(int n, boolean max){
+    if (n < 0){
+      throw new IllegalArgumentException("Negative count: " + n);
+    }
+    modifying();
+    Split<T> parts = new Split<T>();
+    splitAt(root, max ? Math.max(size() - n, 0) : Math.min(n, size()), parts);
+    BinaryTreeNode<T> removed = max ? parts.right : parts.left;
+    root = max ? parts.left : parts.right;
+
+    List<T> result = new ArrayList<T>(size(removed));
+    for (InOrderIterator<T> i = new InOrderIterator<T>(removed); i.hasNext(); ){
+      visit(i.nextNode(), result::add);
+    }
+    if (max){
+      Collections.reverse(result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns an immutable copy of this tree laid out in a single array for
+   * searching, in O(n) time; see FrozenBinarySearchTree. This tree is not
+   * changed, and can be dropped to free its nodes; thaw() turns the copy
+   * back into a tree.
+   *
+   * @return a frozen copy of this tree
+   */
+  public FrozenBinarySearchTree<T> freeze(){
+    return new FrozenBinarySearchTree<T>(iterator(), size(), multiset,
+      comparator, null);
+  }
+
+  /**
+   * Returns an immutable copy of this tree, like freeze(), that also keeps
+   * a long key for each element and searches by the keys, reading the
+   * elements themselves only where keys are equal. The key function must
+   * agree with the order of the elements: an element less than another
+   * must not have a greater key. An int or long element, or a timestamp,
+   * can serve as its own key.
+   *
+   * @param key the key function
+   * @return a frozen copy of this tree searched by key
+   */
+  public FrozenBinarySearchTree<T> freeze(ToLongFunction<? super T> key){
+    if (key == null){
+      throw new IllegalArgumentException("No key function");
+    }
+    return new FrozenBinarySearchTree<T>(iterator(), size(), multiset,
+      comparator, key);
+  }
+
+  /**
+   * Returns a spliterator over the elements of this tree in ascending
+   * order. It splits at subtree boundaries and reports SORTED, if the
+   * tree is in natural order, in addition to ORDERED, SIZED and SUBSIZED.
+   *
+   * @return a spliterator over the elements of this tree
+   */
+  public Spliterator<T> spliterator(){
+    return new InOrderSpliterator<T>(root, (comparator == null)
+      ? Spliterator.ORDERED | Spliterator.SORTED : Spliterator.ORDERED);
+  }
+
+  /**
+   * Returns the element at the specified position in the sorted order of
+   * this tree, descending along the stored subtree sizes.
+   *
+   * @param k the zero-based position of the element (0 is the smallest)
+   * @return the k-th smallest element of the tree
+   * @throws IndexOutOfBoundsException if k is negative or not less than size()
+   */
+  public T select(int k) throws IndexOutOfBoundsException{
+    if (k < 0 || k >= size()){
+      throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + size());
+    }
+    BinaryTreeNode<T> current = root;
+    while (true){
+      int leftSize = size(current.left);
+      if (k < leftSize){
+        current = current.left;
+      }else if (k < leftSize + current.count){
+        return current.element;
+      }else{
+        k = k - leftSize - current.count;
+        current = current.right;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of elements in this tree that are strictly less than
+   * the specified element. The element itself does not have to be in the tree.
+   *
+   * @param element the element whose rank is sought
+   * @return the number of elements less than the element
+   */
+  public int rank(T element){
+    return rank(element, false);
+  }
+
+  /**
+   * Returns the number of elements in this tree that are less than (or, if
+   * inclusive, no greater than) the specified element.
+   *
+   * @param element the element whose rank is sought
+   * @param inclusive whether elements equal to the element are counted
+   * @return the number of elements below the element
+   */
+  protected int rank(T element, boolean inclusive){
+    int result = 0;
+    BinaryTreeNode<T> current = root;
+    while (current != null){
+      int comparison = compare(element, current.element);
+      if (comparison < 0 || (comparison == 0 && !inclusive)){
+        current = current.left;
+      }else{
+        result = result + size(current.left) + current.count;
+        current = current.right;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the greatest element in this tree less than or equal to the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the greatest element no greater than the element, or null
+   */
+  public T floor(T element){
+    return closest(element, false, true);
+  }
+
+  /**
+   * Returns the least element in this tree greater than or equal to the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the least element no less than the element, or null
+   */
+  public T ceiling(T element){
+    return closest(element, true, true);
+  }
+
+  /**
+   * Returns the greatest element in this tree strictly less than the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the greatest element less than the element, or null
+   */
+  public T lower(T element){
+    return closest(element, false, false);
+  }
+
+  /**
+   * Returns the least element in this tree strictly greater than the
+   * specified element, or null if there is no such element.
+   *
+   * @param element the element to compare with
+   * @return the least element greater than the element, or null
+   */
+  public T higher(T element){
+    return closest(element, true, false);
+  }
+
+  /**
+   * Descends from the root towards the specified element, remembering the
+   * last node seen on the requested side of it.
+   *
+   * @param element the element to compare with
+   * @param above true to look for elements above the element
+   * @param inclusive whether an equal element qualifies
+   * @return the closest qualifying element, or null
+   */
+  private T closest(T element, boolean above, boolean inclusive){
+    BinaryTreeNode<T> result = null;
+    BinaryTreeNode<T> current = root;
+    while (current != null){
+      int comparison = compare(element, current.element);
+      if (above ? (comparison < 0 || (inclusive && comparison == 0))
+                : (comparison > 0 || (inclusive && comparison == 0))){
+        result = current;
+        current = above ? current.left : current.right;
+      }else{
+        current = above ? current.right : current.left;
+      }
+    }
+    return (result == null) ? null : result.element;
+  }
+
+  /**
+   * Returns an iterator over the elements of this tree starting at the
+   * specified bound, in ascending or descending order. The stack is seeded
+   * with the nodes on the search path that lie on the far side of the
+   * bound, so the first element is reached in O(log n) time.
+   *
+   * @param bound the first element to include, or null to start at the end
+   * @param inclusive whether an element equal to the bound is included
+   * @param descending true to iterate in descending order
+   * @return an iterator over the elements from the bound onwards
+   */
+  protected InOrderIterator<T> iterator(T bound, boolean inclusive,
+    boolean descending){
+    InOrderIterator<T> iterator = new InOrderIterator<T>(height(root) + 1,
+      descending);
+    if (bound == null){
+      iterator.pushAll(root);
+      return iterator;
+    }
+    BinaryTreeNode<T> current = root;
+    while (current != null){
+      int comparison = compare(bound, current.element);
+      if (descending ? (comparison > 0 || (inclusive && comparison == 0))
+                     : (comparison < 0 || (inclusive && comparison == 0))){
+        iterator.push(current);
+        current = descending ? current.right : current.left;
+      }else{
+        current = descending ? current.left : current.right;
+      }
+    }
+    return iterator;
+  }
+
+  /**
+   * Returns a NavigableSet view of this tree. Changes to either are seen
+   * by the other. If the tree holds equal elements, the view reports each
+   * of them.
+   *
+   * @return a NavigableSet view of the elements of this tree
+   */
+  public NavigableSet<T> asNavigableSet(){
+    return new BinarySearchTreeSet<T>(this, null, false, null, false);
+  }
+
+  /**
+   * Returns a view of the elements of this tree from fromElement to
+   * toElement. Iterating over the k elements of the view takes
+   * O(log n + k) time.
+   *
+   * @param fromElement the low endpoint of the view
+   * @param fromInclusive whether the low endpoint is in the view
+   * @param toElement the high endpoint of the view
+   * @param toInclusive whether the high endpoint is in the view
+   * @return a NavigableSet view of the elements in the range
+   */
+  public NavigableSet<T> subSet(T fromElement, boolean fromInclusive,
+    T toElement, boolean toInclusive){
+    return asNavigableSet().subSet(fromElement, fromInclusive, toElement,
+      toInclusive);
+  }
+
+  /**
+   * Returns a view of the elements of this tree less than (or equal to, if
+   * inclusive is true) toElement.
+   *
+   * @param toElement the high endpoint of the view
+   * @param inclusive whether the high endpoint is in the view
+   * @return a NavigableSet view of the elements below toElement
+   */
+  public NavigableSet<T> headSet(T toElement, boolean inclusive){
+    return asNavigableSet().headSet(toElement, inclusive);
+  }
+
+  /**
+   * Returns a view of the elements of this tree greater than (or equal to,
+   * if inclusive is true) fromElement.
+   *
+   * @param fromElement the low endpoint of the view
+   * @param inclusive whether the low endpoint is in the view
+   * @return a NavigableSet view of the elements above fromElement
+   */
+  public NavigableSet<T> tailSet(T fromElement, boolean inclusive){
+    return asNavigableSet().tailSet(fromElement, inclusive);
+  }
+
+  /**
+   * Joins two binary search trees around a middle element. Every element of
+   * "left" must be no greater than the key and every element of "right" no
+   * less, or strictly so for multisets, which can only be joined with
+   * each other. The nodes of both trees are reused, so both are left
+   * empty. Runs in time proportional to the difference of the two heights.
+   *
+   * @param left the tree holding the smaller elements
+   * @param key the element to place between the two trees
+   * @param right the tree holding the larger elements
+   * @return a new binary search tree holding all the elements
+   * @throws IllegalArgumentException if the trees are not ordered around key
+   */
+  public static <T> LinkedBinarySearchTree<T> join(LinkedBinarySearchTree<T> left,
+    T key, LinkedBinarySearchTree<T> right){
+    left.checkComparable(key);
+    if (left.multiset != right.multiset){
+      throw new IllegalArgumentException("Cannot join a multiset and a tree");
+    }
+    left.checkOrder(right);
+    int low = left.isEmpty() ? 1 : left.compare(key, left.findMax());
+    int high = right.isEmpty() ? -1 : right.compare(key, right.findMin());
+    if (low < 0 || high > 0 || (left.multiset && (low == 0 || high == 0))){
+      throw new IllegalArgumentException("Trees are not ordered around " + key);
+    }
+    left.modifying();
+    right.modifying();
+    LinkedBinarySearchTree<T> tree =
+      new LinkedBinarySearchTree<T>(left.multiset, left.comparator);
+    tree.root = tree.join(left.root, left.newNode(key), right.root);
+    left.root = null;
+    right.root = null;
+    return tree;
+  }
+
+  /**
+   * Removes the elements that are greater than or equal to the key from
+   * this tree and returns them as a new tree, in O(log n) time.
+   *
+   * @param key the element at which to split
+   * @return a binary search tree holding the elements not less than key
+   */
+  public LinkedBinarySearchTree<T> split(T key){
+    modifying();
+    Split<T> parts = new Split<T>();
+    split(root, key, false, parts);
+    root = parts.left;
+    LinkedBinarySearchTree<T> tree =
+      new LinkedBinarySearchTree<T>(multiset, comparator);
+    tree.root = parts.right;
+    return tree;
+  }
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, by splitting the tree at both ends of the range and joining
+   * the outer parts, in O(log n) time however many elements are removed.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement){
+    return removeRange(fromElement, toElement, null);
+  }
+
+  /**
+   * Removes the elements from fromElement, inclusive, to toElement,
+   * exclusive, in O(log n) time, then passes each of them to evicted in
+   * ascending order, in O(k) time for k elements.
+   *
+   * @param fromElement the low end of the range, inclusive
+   * @param toElement the high end of the range, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   * @throws IllegalArgumentException if fromElement is greater than toElement
+   */
+  public int removeRange(T fromElement, T toElement,
+    Consumer<? super T> evicted){
+    if (compare(fromElement, toElement) > 0){
+      throw new IllegalArgumentException(fromElement + " is greater than "
+        + toElement);
+    }
+    modifying();
+    Split<T> parts = new Split<T>();
+    split(root, fromElement, false, parts);
+    BinaryTreeNode<T> head = parts.left;
+    split(parts.right, toElement, false, parts);
+    root = join(head, parts.right);
+    return evict(parts.left, evicted);
+  }
+
+  /**
+   * Removes the elements less than toElement in O(log n) time.
+   *
+   * @param toElement the bound, exclusive
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement){
+    return removeHead(toElement, null);
+  }
+
+  /**
+   * Removes the elements less than toElement in O(log n) time, then passes
+   * each of them to evicted in ascending order.
+   *
+   * @param toElement the bound, exclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeHead(T toElement, Consumer<? super T> evicted){
+    modifying();
+    Split<T> parts = new Split<T>();
+    split(root, toElement, false, parts);
+    root = parts.right;
+    return evict(parts.left, evicted);
+  }
+
+  /**
+   * Removes the elements greater than or equal to fromElement in O(log n)
+   * time.
+   *
+   * @param fromElement the bound, inclusive
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement){
+    return removeTail(fromElement, null);
+  }
+
+  /**
+   * Removes the elements greater than or equal to fromElement in O(log n)
+   * time, then passes each of them to evicted in ascending order.
+   *
+   * @param fromElement the bound, inclusive
+   * @param evicted receives the removed elements, or null
+   * @return the number of elements removed
+   */
+  public int removeTail(T fromElement, Consumer<? super T> evicted){
+    modifying();
+    Split<T> parts = new Split<T>();
+    split(root, fromElement, false, parts);
+    root = parts.left;
+    return evict(parts.right, evicted);
+  }
+
+  /**
+   * Passes the elements of a subtree cut out of this tree to evicted, if
+   * there is one, and returns their number.
+   */
+  private int evict(BinaryTreeNode<T> removed, Consumer<? super T> evicted){
+    if (evicted != null){
+      for (InOrderIterator<T> i = new InOrderIterator<T>(removed); i.hasNext(); ){
+        visit(i.nextNode(), evicted);
+      }
+    }
+    return size(removed);
+  }
+
+  /**
+   * Adds the elements of the other tree to this tree, except those equal to
+   * an element already in this tree. The nodes of the other tree are moved
+   * into this one, so it is left empty. Runs in O(m log(n/m + 1)) time for
+   * trees of sizes m <= n, in parallel on the common ForkJoinPool for large
+   * trees.
+   *
+   * @param other the tree whose elements are added
+   * @throws IllegalArgumentException if only one of the trees is a multiset
+   */
+  public void union(LinkedBinarySearchTree<T> other){
+    modifying();
+    other.modifying();
+    if (other.multiset != multiset){
+      throw new IllegalArgumentException("Cannot unite a multiset and a tree");
+    }
+    checkOrder(other);
+    if (other != this){
+      root = setOperation(UNION, root, other.root);
+      other.root = null;
+    }
+  }
+
+  /**
+   * Removes from this tree the elements that have no equal element in the
+   * other tree, which is left empty.  Runs in O(m log(n/m + 1)) time, in
+   * parallel for large trees.
+   *
+   * @param other the tree whose elements are retained
+   */
+  public void intersection(LinkedBinarySearchTree<T> other){
+    modifying();
+    other.modifying();
+    checkOrder(other);
+    if (other != this){
+      root = setOperation(INTERSECTION, root, other.root);
+      other.root = null;
+    }
+  }
+
+  /**
+   * Removes from this tree the elements that have an equal element in the
+   * other tree, which is left empty.  Runs in O(m log(n/m + 1)) time, in
+   * parallel for large trees.
+   *
+   * @param other the tree whose elements are removed
+   */
+  public void difference(LinkedBinarySearchTree<T> other){
+    modifying();
+    other.modifying();
+    checkOrder(other);
+    if (other == this){
+      root = null;
+    }else{
+      root = setOperation(DIFFERENCE, root, other.root);
+      other.root = null;
+    }
+  }
+
+  /**
+   * Throws IllegalArgumentException unless the other tree is ordered by
+   * the same comparator as this one.
+   */
+  private void checkOrder(LinkedBinarySearchTree<T> other){
+    if (other.comparator != comparator){
+      throw new IllegalArgumentException("Trees are ordered differently");
+    }
+  }
+
+  /**
+   * Joins two subtrees with a middle node. All elements of "left" must be
+   * no greater than the middle element, and all elements of "right" no less.
+   * The middle node is attached where the heights of the two sides match,
+   * descending the spine of the taller subtree, which is then rebalanced on
+   * the way back up.
+   *
+   * @param left the subtree holding the smaller elements
+   * @param middle the node that goes between the two subtrees
+   * @param right the subtree holding the larger elements
+   * @return the root of the joined subtree
+   */
+  protected BinaryTreeNode<T> join(BinaryTreeNode<T> left,
+    BinaryTreeNode<T> middle, BinaryTreeNode<T> right){
+    if (height(left) > height(right) + 1){
+      left.right = join(left.right, middle, right);
+      return rebalance(left);
+    }else if (height(right) > height(left) + 1){
+      right.left = join(left, middle, right.left);
+      return rebalance(right);
+    }else{
+      middle.left = left;
+      middle.right = right;
+      update(middle);
+      return middle;
+    }
+  }
+
+  /**
+   * Joins two subtrees, all elements of "left" being no greater than those
+   * of "right", using the least node of "right" as the middle node.
+   *
+   * @param left the subtree holding the smaller elements
+   * @param right the subtree holding the larger elements
+   * @return the root of the joined subtree
+   */
+  protected BinaryTreeNode<T> join(BinaryTreeNode<T> left,
+    BinaryTreeNode<T> right){
+    if (left == null){
+      return right;
+    }else if (right == null){
+      return left;
+    }
+    BinaryTreeNode<T> middle = right;
+    while (middle.left != null){
+      middle = middle.left;
+    }
+    return join(left, middle, removeMin(right));
+  }
+
+  /**
+   * Splits the subtree rooted at "node" into the elements less than the key
+   * (or no greater than the key, if inclusive) and the remaining elements.
+   * The nodes on the search path are joined back onto whichever side they
+   * belong, so the split takes O(log n) time.
+   *
+   * @param node the root of the subtree to split
+   * @param key the element at which to split
+   * @param inclusive whether elements equal to the key go to the left part
+   * @param parts receives the roots of the left and right parts
+   */
+  protected void split(BinaryTreeNode<T> node, T key, boolean inclusive,
+    Split<T> parts){
+    if (node == null){
+      parts.left = null;
+      parts.right = null;
+      return;
+    }
+    int comparison = compare(node.element, key);
+    if (comparison < 0 || (inclusive && comparison == 0)){
+      split(node.right, key, inclusive, parts);
+      parts.left = join(node.left, node, parts.left);
+    }else{
+      split(node.left, key, inclusive, parts);
+      parts.right = join(parts.right, node, node.right);
+    }
+  }
+
+  /**
+   * Splits the subtree rooted at "node" into its k smallest elements and
+   * the others, like split() but by rank. In a multiset, a node whose
+   * occurrences fall on both sides is divided between them.
+   *
+   * @param node the root of the subtree to split
+   * @param k the number of elements that go to the left part
+   * @param parts receives the roots of the left and right parts
+   */
+  protected void splitAt(BinaryTreeNode<T> node, int k, Split<T> parts){
+    if (node == null){
+      parts.left = null;
+      parts.right = null;
+      return;
+    }
+    int leftSize = size(node.left);
+    if (k <= leftSize){
+      splitAt(node.left, k, parts);
+      parts.right = join(parts.right, node, node.right);
+    }else if (k >= leftSize + node.count){
+      splitAt(node.right, k - leftSize - node.count, parts);
+      parts.left = join(node.left, node, parts.left);
+    }else{
+      BinaryTreeNode<T> taken = newNode(node.element);
+      taken.count = k - leftSize;
+      node.count = node.count - taken.count;
+      parts.left = join(node.left, taken, null);
+      parts.right = join(null, node, node.right);
+    }
+  }
+
+  /**
+   * Splits the subtree rooted at "node" into the elements less than the key
+   * and the elements greater than the key, dropping those equal to it.
+   *
+   * @param node the root of the subtree to split
+   * @param key the element at which to split
+   * @param parts receives the roots of the left and right parts
+   * @return the number of elements equal to the key that were dropped
+   */
+  private int splitAround(BinaryTreeNode<T> node, T key, Split<T> parts){
+    if (node == null){
+      parts.left = null;
+      parts.right = null;
+      return 0;
+    }
+    int comparison = compare(node.element, key);
+    int dropped;
+    if (comparison < 0){
+      dropped = splitAround(node.right, key, parts);
+      parts.left = join(node.left, node, parts.left);
+    }else if (comparison > 0){
+      dropped = splitAround(node.left, key, parts);
+      parts.right = join(parts.right, node, node.right);
+    }else{
+      // further equal elements can only be at the inner ends of the children
+      BinaryTreeNode<T> right = node.right;
+      split(node.left, key, false, parts);
+      BinaryTreeNode<T> left = parts.left;
+      dropped = node.count + size(parts.right);
+      split(right, key, true, parts);
+      dropped = dropped + size(parts.left);
+      parts.left = left;
+    }
+    return dropped;
+  }
+
+  private static final int UNION = 0;
+  private static final int INTERSECTION = 1;
+  private static final int DIFFERENCE = 2;
+  private static final int MERGE = 3;   // union keeping equal elements
+
+  // subproblems smaller than this are not worth forking
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 12;
+
+  /**
+   * Combines two subtrees with a set operation by splitting "b" around the
+   * root of "a", combining the two halves recursively and joining the
+   * results. Elements of "a" equal to its root lie next to it, at the high
+   * end of its left subtree and the low end of its right subtree; they are
+   * split off and kept or dropped together with the root. MERGE keeps
+   * every element of both subtrees; in a multiset it adds the elements of
+   * "b" equal to the root of "a" to the count of that root.
+   *
+   * @param operation UNION, INTERSECTION, DIFFERENCE or MERGE
+   * @param a the subtree of this tree
+   * @param b the subtree of the other tree
+   * @return the root of the combined subtree
+   */
+  private BinaryTreeNode<T> combine(int operation, BinaryTreeNode<T> a,
+    BinaryTreeNode<T> b){
+    boolean keepsAll = (operation == UNION || operation == MERGE);
+    if (a == null){
+      return keepsAll ? b : null;
+    }else if (b == null){
+      return (operation == INTERSECTION) ? null : a;
+    }
+
+    T key = a.element;
+    BinaryTreeNode<T> aLeft = a.left;
+    BinaryTreeNode<T> aRight = a.right;
+    BinaryTreeNode<T> equal = null;
+    Split<T> parts = new Split<T>();
+
+    int dropped = 0;
+    if (operation == MERGE && !multiset){
+      // b falls apart into the elements less than the key and the rest
+      split(b, key, false, parts);
+    }else{
+      // b falls apart into the elements less than and greater than the
+      // key; its elements equal to the key are dropped
+      dropped = splitAround(b, key, parts);
+    }
+    boolean found = (dropped > 0);
+    BinaryTreeNode<T> bLeft = parts.left;
+    BinaryTreeNode<T> bRight = parts.right;
+
+    if (!keepsAll){
+      if (aLeft != null && compare(key, max(aLeft).element) == 0){
+        split(aLeft, key, false, parts);
+        aLeft = parts.left;
+        equal = parts.right;
+      }
+      if (aRight != null && compare(key, min(aRight).element) == 0){
+        split(aRight, key, true, parts);
+        aRight = parts.right;
+        equal = join(equal, parts.left);
+      }
+    }
+
+    BinaryTreeNode<T> left, right;
+    if (ForkJoinTask.inForkJoinPool()
+        && size(a) + size(b) >= SEQUENTIAL_THRESHOLD){
+      SetOperation task = new SetOperation(operation, aLeft, bLeft);
+      task.fork();
+      right = combine(operation, aRight, bRight);
+      left = task.join();
+    }else{
+      left = combine(operation, aLeft, bLeft);
+      right = combine(operation, aRight, bRight);
+    }
+
+    if (keepsAll || (operation == INTERSECTION) == found){
+      // keep the root of a, and its equals
+      if (operation == MERGE){
+        a.count = a.count + dropped;
+      }
+      if (equal == null){
+        return join(left, a, right);
+      }
+      a.left = null;
+      a.right = null;
+      update(a);
+      return join(join(left, join(a, equal)), right);
+    }else{
+      return join(left, right);
+    }
   }
 
-  private BinaryTreeNode<T> singleRightRotation(BinaryTreeNode<T> oldRoot){
+  /**
+   * Runs combine on two whole trees, on the common ForkJoinPool if they are
+   * large enough to be worth it.
+   *
+   * @param operation UNION, INTERSECTION, DIFFERENCE or MERGE
+   * @param a the root of this tree
+   * @param b the root of the other tree
+   * @return the root of the combined tree
+   */
+  private BinaryTreeNode<T> setOperation(int operation, BinaryTreeNode<T> a,
+    BinaryTreeNode<T> b){
+    if (size(a) + size(b) < SEQUENTIAL_THRESHOLD){
+      return combine(operation, a, b);
+    }
+    return ForkJoinPool.commonPool().invoke(new SetOperation(operation, a, b));
+  }
+
+  /**
+   * Returns the node with the least value in the specified subtree.
+   */
+  private BinaryTreeNode<T> min(BinaryTreeNode<T> node){
+    while (node.left != null){
+      node = node.left;
+    }
+    return node;
+  }
+
+  /**
+   * Returns the node with the highest value in the specified subtree.
+   */
+  private BinaryTreeNode<T> max(BinaryTreeNode<T> node){
+    while (node.right != null){
+      node = node.right;
+    }
+    return node;
+  }
+
+  // The rotations are protected so that a subclass can observe them. Note
+  // that each double rotation is made of two single ones.
+
+  protected BinaryTreeNode<T> singleRightRotation(BinaryTreeNode<T> oldRoot){
     //TASK: Rotate the left child up and to the right to
     //      become the new root of this subtree
     BinaryTreeNode<T> newRoot = oldRoot.left;
     oldRoot.left = newRoot.right;
     newRoot.right = oldRoot;
-    oldRoot.height = Math.max(height(oldRoot.left), height(oldRoot.right)) + 1;
-    newRoot.height = Math.max(height(newRoot.left), height(newRoot.right)) + 1;
+    update(oldRoot);
+    update(newRoot);
     return newRoot;
   }
 
-  private BinaryTreeNode<T> singleLeftRotation(BinaryTreeNode<T> oldRoot){
+  protected BinaryTreeNode<T> singleLeftRotation(BinaryTreeNode<T> oldRoot){
     //TASK: Rotate the right child up and to the left to
     //      become the new root of this subtree
     BinaryTreeNode<T> newRoot = oldRoot.right;
     oldRoot.right = newRoot.left;
     newRoot.left = oldRoot;
-    oldRoot.height = Math.max(height(oldRoot.left), height(oldRoot.right)) + 1;
-    newRoot.height = Math.max(height(newRoot.left), height(newRoot.right)) + 1;
+    update(oldRoot);
+    update(newRoot);
     return newRoot;
   }
 
-  private BinaryTreeNode<T> doubleLeftRightRotation(BinaryTreeNode<T> oldRoot){
+  protected BinaryTreeNode<T> doubleLeftRightRotation(BinaryTreeNode<T> oldRoot){
     //TASK: Rotate the left subtree to the left, then up
     //      and to the right to become the new root of this subtree
     oldRoot.left = singleLeftRotation(oldRoot.left);
@@ -353,11 +1967,244 @@ public class LinkedBinarySearchTree<T> extends LinkedBinaryTree<T>
     return newRoot;
   }
 
-  private BinaryTreeNode<T> doubleRightLeftRotation(BinaryTreeNode<T> oldRoot){
+  protected BinaryTreeNode<T> doubleRightLeftRotation(BinaryTreeNode<T> oldRoot){
     //TASK: Rotate the right subtree to the right, then up and to
     //      the left to become the new root of this subtree
     oldRoot.right = singleRightRotation(oldRoot.right);
     BinaryTreeNode<T> newRoot = singleLeftRotation(oldRoot);
     return newRoot;
   }
+
+  /**
+   * SortedIterator passes the elements of another iterator through,
+   * checking that each one is comparable and not less than the one before.
+   */
+  private static class SortedIterator<T> implements Iterator<T>{
+    private Iterator<T> elements;
+    private Comparable<T> previous;
+
+    public SortedIterator(Iterator<T> elements){
+      this.elements = elements;
+    }
+
+    public boolean hasNext(){
+      return elements.hasNext();
+    }
+
+    public T next(){
+      T element = elements.next();
+      if (!(element instanceof Comparable)){
+        throw new NonComparableElementException("LinkedBinarySearchTree");
+      }
+      if (previous != null && previous.compareTo(element) > 0){
+        throw new IllegalArgumentException("Elements are not sorted: "
+          + element + " follows " + previous);
+      }
+      previous = (Comparable<T>)element;
+      return element;
+    }
+  }
+
+  /**
+   * Split holds the two parts produced by splitting a subtree.
+   */
+  protected static class Split<T>{
+    protected BinaryTreeNode<T> left, right;
+  }
+
+  /**
+   * Finger is a cursor that remembers the path from the root to the node
+   * its last search ended at. The next search climbs that path only until
+   * it reaches a subtree whose range of values holds the element sought,
+   * and descends from there, so when successive elements are d positions
+   * apart it typically makes O(log d) comparisons instead of O(log n).
+   * Elements close in order can still lie on either side of a node high
+   * up, and then the climb goes that high. Insertions through the finger
+   * still refresh the sizes stored all the way up to the root. Any other
+   * change to the tree sends the next search back to the root.
+   */
+  public class Finger{
+    private BinaryTreeNode<T>[] path;
+    private boolean[] wentLeft;
+    // the nearest nodes above each node of the path that bound its
+    // subtree from below and from above, or null if there is none
+    private BinaryTreeNode<T>[] low, high;
+    private int depth;
+    private int expectedModCount;
+
+    private Finger(){
+      path = newPath(root);
+      wentLeft = new boolean[path.length];
+      low = newPath(root);
+      high = newPath(root);
+      expectedModCount = modCount;
+    }
+
+    /**
+     * Returns the matching element, or null if there is none, searching
+     * from the position of the last search and leaving the finger at the
+     * match or at the last node visited.
+     *
+     * @param targetElement the element being sought
+     * @return the matching element, or null
+     */
+    public T find(T targetElement){
+      BinaryTreeNode<T> current = start(targetElement);
+      while (current != null){
+        record(current);
+        if (current.element.equals(targetElement)){
+          depth++;
+          return current.element;
+        }
+        wentLeft[depth] = compare(targetElement, current.element) <= 0;
+        current = wentLeft[depth] ? current.left : current.right;
+        depth++;
+      }
+      return null;
+    }
+
+    /**
+     * Returns true if the tree holds an element matching the target,
+     * searching from the position of the last search.
+     *
+     * @param targetElement the element being sought
+     * @return true if the element is in the tree
+     */
+    public boolean contains(T targetElement){
+      return find(targetElement) != null;
+    }
+
+    /**
+     * Adds the element to the tree, searching for its place from the
+     * position of the last search, and leaves the finger at the new node.
+     * If rebalancing rotated nodes on the path, the finger keeps the part
+     * of the path above them.
+     *
+     * @param element the element to be added
+     * @throws NonComparableElementException if the element is not comparable
+     */
+    public void addElement(T element){
+      checkComparable(element);
+      BinaryTreeNode<T> current = start(element);
+      modifying();
+      expectedModCount = modCount;
+
+      while (current != null){
+        record(current);
+        int comparison = compare(element, current.element);
+        if (multiset && comparison == 0){
+          current.count++;
+          resize(path, depth + 1, current, 1);
+          depth++;
+          return;
+        }
+        wentLeft[depth] = comparison < 0;
+        current = wentLeft[depth] ? current.left : current.right;
+        depth++;
+      }
+      BinaryTreeNode<T> node = newNode(element);
+      root = retrace(path, wentLeft, depth, node);
+
+      // keep the nodes that are still linked as they were
+      record(node);
+      int valid = 0;
+      while (valid <= depth && path[valid] == (valid == 0 ? root
+          : wentLeft[valid - 1] ? path[valid - 1].left : path[valid - 1].right)){
+        valid++;
+      }
+      depth = valid;
+    }
+
+    /**
+     * Climbs the saved path to the lowest node whose subtree must hold the
+     * element if the tree does, and returns it, leaving depth at its index
+     * so that the descent records it again. Returns the root if the tree
+     * has been changed since the path was saved.
+     */
+    private BinaryTreeNode<T> start(T element){
+      if (expectedModCount != modCount){
+        depth = 0;
+        expectedModCount = modCount;
+      }
+      if (path.length < height(root) + 2){
+        int length = height(root) + 2;
+        path = Arrays.copyOf(path, length);
+        wentLeft = Arrays.copyOf(wentLeft, length);
+        low = Arrays.copyOf(low, length);
+        high = Arrays.copyOf(high, length);
+      }
+      while (depth > 1 && !covers(depth - 1, element)){
+        depth--;
+      }
+      if (depth == 0){
+        return root;
+      }
+      depth--;
+      return path[depth];
+    }
+
+    /**
+     * Returns true if the element lies strictly between the bounds of the
+     * subtree rooted at path[i], so that a search from the root for it
+     * would pass through path[i].
+     */
+    private boolean covers(int i, T element){
+      return (low[i] == null || compare(element, low[i].element) > 0)
+        && (high[i] == null || compare(element, high[i].element) < 0);
+    }
+
+    /**
+     * Stores the node at path[depth] with the bounds of its subtree.
+     */
+    private void record(BinaryTreeNode<T> node){
+      if (depth == 0){
+        low[0] = null;
+        high[0] = null;
+      }else if (wentLeft[depth - 1]){
+        low[depth] = low[depth - 1];
+        high[depth] = path[depth - 1];
+      }else{
+        low[depth] = path[depth - 1];
+        high[depth] = high[depth - 1];
+      }
+      path[depth] = node;
+    }
+  }
+
+  /**
+   * SetOperation runs one half of a set operation as a ForkJoin task.
+   */
+  private class SetOperation extends RecursiveTask<BinaryTreeNode<T>>{
+    private int operation;
+    private BinaryTreeNode<T> a, b;
+
+    public SetOperation(int operation, BinaryTreeNode<T> a,
+      BinaryTreeNode<T> b){
+      this.operation = operation;
+      this.a = a;
+      this.b = b;
+    }
+
+    protected BinaryTreeNode<T> compute(){
+      return combine(operation, a, b);
+    }
+  }
+
+  /**
+   * Assembly builds a subtree of sorted elements as a ForkJoin task.
+   */
+  private class Assembly extends RecursiveTask<BinaryTreeNode<T>>{
+    private T[] sorted;
+    private int from, to;
+
+    public Assembly(T[] sorted, int from, int to){
+      this.sorted = sorted;
+      this.from = from;
+      this.to = to;
+    }
+
+    protected BinaryTreeNode<T> compute(){
+      return assemble(sorted, from, to);
+    }
+  }
 }
@@ -1,4 +1,13 @@
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * LinkedBinaryTree implements the BinaryTreeADT interface
@@ -35,6 +44,8 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
     root = new BinaryTreeNode<T>(element);
     root.setLeft(left.root);
     root.setRight(right.root);
+    root.height = Math.max(height(left.root), height(right.root)) + 1;
+    root.size = size(left.root) + size(right.root) + 1;
   }
 
   /**
@@ -65,11 +76,22 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return the integer size of the tree
    */
   public int size(){
-    int result = 0;
-    if(root != null){
-      result = 1 + root.numChildren();
+    return size(root);
+  }
+
+  /**
+   * Returns the number of elements in the subtree rooted at the specified
+   * node, as stored in the node.
+   *
+   * @param node the root of the subtree
+   * @return the number of elements in the subtree, 0 for an empty subtree
+   */
+  protected int size(BinaryTreeNode<T> node){
+    if(node == null){
+      return 0;
+    }else{
+      return node.size;
     }
-    return result;
   }
 
   /**
@@ -140,21 +162,19 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    */
   private BinaryTreeNode<T> findNode(T targetElement,
                                      BinaryTreeNode<T> next){
-    if (next == null){
-      return null;
-    }
-
-    if (next.getElement().equals(targetElement)){
-      return next;
-    }
-
-    BinaryTreeNode<T> temp = findNode(targetElement, next.getLeft());
-
-    if (temp == null){
-      temp = findNode(targetElement, next.getRight());
+    // preorder scan with an explicit stack, so deep trees cannot overflow
+    // the call stack
+    ArrayDeque<BinaryTreeNode<T>> pending = new ArrayDeque<BinaryTreeNode<T>>();
+    while (next != null){
+      if (next.getElement().equals(targetElement)){
+        return next;
+      }
+      if (next.getRight() != null){
+        pending.push(next.getRight());
+      }
+      next = (next.getLeft() != null) ? next.getLeft() : pending.poll();
     }
-
-    return temp;
+    return null;
   }
 
   /**
@@ -164,7 +184,23 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return a string representation of this binary tree
    */
   public String toString(){
-    return root.print();
+    return (root == null) ? "" : root.print();
+  }
+
+  /**
+   * Writes a drawing of this binary tree to the specified destination as
+   * it is produced, so that large trees can be dumped straight to a file.
+   * Subtrees below the depth limit are summarized in a single line giving
+   * their number of elements.
+   *
+   * @param out the destination of the drawing
+   * @param maxDepth the depth of the deepest nodes to draw
+   * @throws IOException if writing to the destination fails
+   */
+  public void print(Appendable out, int maxDepth) throws IOException{
+    if (root != null){
+      root.print(out, maxDepth);
+    }
   }
 
   /**
@@ -173,21 +209,18 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return a string representation of the inorder traversal over this binary tree
    */
   public String inOrder(){
-    return inOrder(root);
+    StringBuilder result = new StringBuilder();
+    inOrder(element -> result.append(element));
+    return result.toString();
   }
 
   /**
-   * Helper method that returns the result of inorder traversal
+   * Performs the action for each element in an inorder traversal.
    *
-   * @param node the node from which to start the traversal
-   * @return a string representation of the inorder traversal over this binary tree
+   * @param action the action to be performed for each element
    */
-  private String inOrder(BinaryTreeNode<T> node){
-    if(node == null){
-      return "";
-    }else{
-      return inOrder(node.getLeft())+node.getElement()+inOrder(node.getRight());
-    }
+  public void inOrder(Consumer<? super T> action){
+    iterator().forEachRemaining(action);
   }
 
   /**
@@ -196,19 +229,31 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return a string representation of the preorder traversal over this binary tree
    */
   public String preOrder(){
-    // To be completed as a Programming Project
-    return null;
+    StringBuilder result = new StringBuilder();
+    preOrder(element -> result.append(element));
+    return result.toString();
   }
 
   /**
-   * Helper method that returns the result of preorder traversal
+   * Performs the action for each element in a preorder traversal.
    *
-   * @param node the node from which to start the traversal
-   * @return a string representation of the preorder traversal over this binary tree
+   * @param action the action to be performed for each element
    */
-  private String preOrder(BinaryTreeNode<T> node){
-    // To be completed as a Programming Project
-    return null;
+  public void preOrder(Consumer<? super T> action){
+    ArrayDeque<BinaryTreeNode<T>> pending = new ArrayDeque<BinaryTreeNode<T>>();
+    if (root != null){
+      pending.push(root);
+    }
+    while (!pending.isEmpty()){
+      BinaryTreeNode<T> current = pending.pop();
+      visit(current, action);
+      if (current.getRight() != null){
+        pending.push(current.getRight());
+      }
+      if (current.getLeft() != null){
+        pending.push(current.getLeft());
+      }
+    }
   }
 
   /**
@@ -217,19 +262,35 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return a string representation of the postorder traversal over this binary tree
    */
   public String postOrder(){
-    // To be completed as a Programming Project
-    return null;
+    StringBuilder result = new StringBuilder();
+    postOrder(element -> result.append(element));
+    return result.toString();
   }
 
   /**
-   * Helper method that returns the result of postorder traversal
+   * Performs the action for each element in a postorder traversal.
    *
-   * @param node the node from which to start the traversal
-   * @return a string representation of the postorder traversal over this binary tree
+   * @param action the action to be performed for each element
    */
-  private String postOrder(BinaryTreeNode<T> node){
-    // To be completed as a Programming Project
-    return null;
+  public void postOrder(Consumer<? super T> action){
+    ArrayDeque<BinaryTreeNode<T>> pending = new ArrayDeque<BinaryTreeNode<T>>();
+    BinaryTreeNode<T> current = root;
+    BinaryTreeNode<T> last = null;
+    while (current != null || !pending.isEmpty()){
+      if (current != null){
+        pending.push(current);
+        current = current.getLeft();
+      }else{
+        BinaryTreeNode<T> top = pending.peek();
+        if (top.getRight() != null && top.getRight() != last){
+          // visit the right subtree before the node itself
+          current = top.getRight();
+        }else{
+          visit(top, action);
+          last = pending.pop();
+        }
+      }
+    }
   }
 
   /**
@@ -238,18 +299,256 @@ public class LinkedBinaryTree<T> implements BinaryTreeADT<T>{
    * @return a string representation of the levelorder traversal over this binary tree
    */
   public String levelOrder(){
-    LinkedList<BinaryTreeNode<T>> nodes = new LinkedList<BinaryTreeNode<T>>();
-    String result = "";
-    nodes.add(root);
-    while(nodes.size() != 0){
+    StringBuilder result = new StringBuilder();
+    levelOrder(element -> result.append(element));
+    return result.toString();
+  }
+
+  /**
+   * Performs the action for each element in a levelorder traversal.
+   *
+   * @param action the action to be performed for each element
+   */
+  public void levelOrder(Consumer<? super T> action){
+    ArrayDeque<BinaryTreeNode<T>> nodes = new ArrayDeque<BinaryTreeNode<T>>();
+    if (root != null){
+      nodes.add(root);
+    }
+    while (!nodes.isEmpty()){
       BinaryTreeNode<T> current = nodes.remove();
-      if(current != null){
-        result += current.getElement();
+      visit(current, action);
+      if (current.getLeft() != null){
         nodes.add(current.getLeft());
+      }
+      if (current.getRight() != null){
         nodes.add(current.getRight());
       }
     }
+  }
+
+  /**
+   * Returns an iterator over the elements of this tree in inorder. The
+   * iterator keeps the path to the next element on a stack bounded by the
+   * height of the tree, so it does not copy the elements.
+   *
+   * @return an inorder iterator over the elements of this tree
+   */
+  public Iterator<T> iterator(){
+    return new InOrderIterator<T>(root);
+  }
+
+  /**
+   * Returns a spliterator over the elements of this tree in inorder. It
+   * splits at subtree boundaries and knows the exact size of every part.
+   *
+   * @return an inorder spliterator over the elements of this tree
+   */
+  public Spliterator<T> spliterator(){
+    return new InOrderSpliterator<T>(root, Spliterator.ORDERED);
+  }
+
+  /**
+   * Returns a sequential stream over the elements of this tree in inorder.
+   * Calling parallel() on it splits the work at subtree boundaries.
+   *
+   * @return a stream over the elements of this tree
+   */
+  public Stream<T> stream(){
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Passes the element of a node to an action once for each of its
+   * occurrences.
+   *
+   * @param node the node to visit
+   * @param action the action to perform on its element
+   */
+  protected static <T> void visit(BinaryTreeNode<T> node,
+    Consumer<? super T> action){
+    for (int i = 0; i < node.count; i++){
+      action.accept(node.element);
+    }
+  }
+
+  /**
+   * InOrderIterator walks a binary tree in inorder. The stack holds the
+   * nodes whose element is still to be returned, the next one on top. An
+   * element that occurs several times in its node is returned that many
+   * times by next(), although nextNode() returns the node once.
+   */
+  protected static class InOrderIterator<T> implements Iterator<T>{
+    private BinaryTreeNode<T>[] stack;
+    private int depth;
+    private boolean descending;
+    private BinaryTreeNode<T> repeated;
+    private int repeats;
+
+    /**
+     * Creates an iterator over the subtree rooted at the specified node.
+     *
+     * @param root the root of the subtree to iterate over
+     */
+    public InOrderIterator(BinaryTreeNode<T> root){
+      this(root == null ? 0 : root.height + 1, false);
+      pushAll(root);
+    }
+
+    /**
+     * Creates an iterator with nothing on its stack yet, to be filled by
+     * the caller with push and pushAll.
+     *
+     * @param capacity the initial size of the stack
+     * @param descending true to walk the tree in reverse inorder
+     */
+    protected InOrderIterator(int capacity, boolean descending){
+      stack = (BinaryTreeNode<T>[])new BinaryTreeNode[capacity];
+      this.descending = descending;
+    }
+
+    /**
+     * Pushes a single node, whose element is to be returned before those
+     * of the nodes already on the stack.
+     *
+     * @param node the node to push
+     */
+    protected void push(BinaryTreeNode<T> node){
+      if (depth == stack.length){
+        // only possible if heights were not kept up to date
+        stack = Arrays.copyOf(stack, 2 * depth + 1);
+      }
+      stack[depth++] = node;
+    }
+
+    /**
+     * Pushes the specified node and its chain of left descendants (right
+     * descendants when descending).
+     *
+     * @param node the node to start from
+     */
+    protected void pushAll(BinaryTreeNode<T> node){
+      while (node != null){
+        push(node);
+        node = descending ? node.right : node.left;
+      }
+    }
+
+    public boolean hasNext(){
+      return repeats > 0 || depth > 0;
+    }
+
+    public T next(){
+      if (repeats > 0){
+        repeats--;
+        return repeated.element;
+      }
+      BinaryTreeNode<T> node = nextNode();
+      if (node.count > 1){
+        repeated = node;
+        repeats = node.count - 1;
+      }
+      return node.element;
+    }
+
+    /**
+     * Returns the next node in the iteration.
+     *
+     * @return the next node
+     * @throws NoSuchElementException if there are no more nodes
+     */
+    protected BinaryTreeNode<T> nextNode(){
+      if (depth == 0){
+        throw new NoSuchElementException();
+      }
+      BinaryTreeNode<T> node = stack[--depth];
+      stack[depth] = null;
+      pushAll(descending ? node.left : node.right);
+      return node;
+    }
+  }
+
+  /**
+   * InOrderSpliterator covers a single node followed by a whole subtree.
+   * Splitting hands the node and the left subtree to the new spliterator
+   * and keeps the root of the subtree and its right subtree, so each part
+   * again has that shape and its exact size is known from the stored
+   * subtree sizes. Once traversal has started it no longer splits.
+   */
+  protected static class InOrderSpliterator<T> implements Spliterator<T>{
+    private BinaryTreeNode<T> head;
+    private int headCount;   // occurrences of the head still to come
+    private BinaryTreeNode<T> tree;
+    private InOrderIterator<T> iterator;
+    private long remaining;
+    private int characteristics;
+
+    /**
+     * Creates a spliterator over the subtree rooted at the specified node.
+     *
+     * @param tree the root of the subtree
+     * @param characteristics ORDERED, possibly with SORTED
+     */
+    public InOrderSpliterator(BinaryTreeNode<T> tree, int characteristics){
+      this(null, 0, tree, characteristics);
+    }
+
+    private InOrderSpliterator(BinaryTreeNode<T> head, int headCount,
+      BinaryTreeNode<T> tree, int characteristics){
+      this.head = head;
+      this.headCount = headCount;
+      this.tree = tree;
+      this.characteristics = characteristics | Spliterator.SIZED
+        | Spliterator.SUBSIZED;
+      remaining = headCount + (tree == null ? 0 : tree.size);
+    }
+
+    public boolean tryAdvance(Consumer<? super T> action){
+      if (head != null){
+        T element = head.element;
+        if (--headCount == 0){
+          head = null;
+        }
+        remaining--;
+        action.accept(element);
+        return true;
+      }
+      if (iterator == null){
+        iterator = new InOrderIterator<T>(tree);
+      }
+      if (iterator.hasNext()){
+        remaining--;
+        action.accept(iterator.next());
+        return true;
+      }
+      return false;
+    }
+
+    public Spliterator<T> trySplit(){
+      if (iterator != null || tree == null){
+        return null;
+      }
+      Spliterator<T> prefix = new InOrderSpliterator<T>(head, headCount,
+        tree.left, characteristics);
+      head = tree;
+      headCount = tree.count;
+      tree = tree.right;
+      remaining = remaining - prefix.estimateSize();
+      return prefix;
+    }
+
+    public long estimateSize(){
+      return remaining;
+    }
 
-    return result;
+    public int characteristics(){
+      return characteristics;
+    }
+
+    public Comparator<? super T> getComparator(){
+      if ((characteristics & Spliterator.SORTED) == 0){
+        throw new IllegalStateException();
+      }
+      return null; // natural order
+    }
   }
 }
@@ -0,0 +1,481 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * MappedBinarySearchTree is an AVL tree whose nodes live in a memory-mapped
+ * file rather than on the Java heap. Each node takes a fixed-size slot
+ * holding the indices of its children, its height and its element, written
+ * by a fixed-width Codec; a node is referred to by its slot number, from
+ * which its file offset follows. Opening an existing file only maps it, so
+ * the tree is available again at once after a restart, and a large tree
+ * does not add to the heap or to garbage collection pauses.
+ *
+ * Insertion, removal and the four rotations follow LinkedBinarySearchTree.
+ * Changes reach the file through the operating system's page cache;
+ * force() writes them to the storage device. A crash between two calls to
+ * force() may leave the file inconsistent. Note that equal elements are
+ * added to the right.
+ */
+public class MappedBinarySearchTree<T> implements Closeable{
+  private static final int MAGIC = 0x41564c4d; // "AVLM"
+  private static final int VERSION = 1;
+
+  // header layout
+  private static final int HEADER = 64;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int WIDTH_OFFSET = 8;
+  private static final int ROOT_OFFSET = 12;
+  private static final int FREE_OFFSET = 16;
+  private static final int USED_OFFSET = 20;
+  private static final int COUNT_OFFSET = 24;
+
+  // node layout
+  private static final int LEFT = 0;
+  private static final int RIGHT = 4;
+  private static final int HEIGHT = 8;
+  private static final int KEY = 12;
+
+  private static final int NIL = -1;
+  private static final int INITIAL_NODES = 1024;
+  private static final int MAX_PATH = 64;
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private ByteBuffer keyView;     // a view of the buffer limited to one key
+  private Codec<T> codec;
+  private int nodeSize;
+  private int capacity;           // node slots in the mapped region
+
+  private int[] path = new int[MAX_PATH];
+  private boolean[] wentLeft = new boolean[MAX_PATH];
+
+  /**
+   * Opens the tree stored in the specified file, creating an empty one if
+   * the file does not exist or is empty.
+   *
+   * @param file the file holding the tree
+   * @param codec a fixed-width codec for the elements
+   * @throws IOException if the file cannot be opened or mapped
+   * @throws IllegalArgumentException if the codec is not fixed-width or
+   *         the file does not hold a tree written with the same key width
+   */
+  public MappedBinarySearchTree(Path file, Codec<T> codec) throws IOException{
+    if (codec.width() <= 0){
+      throw new IllegalArgumentException("MappedBinarySearchTree requires a fixed-width codec");
+    }
+    this.codec = codec;
+    nodeSize = KEY + codec.width();
+    channel = FileChannel.open(file, StandardOpenOption.READ,
+      StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    if (channel.size() == 0){
+      map(INITIAL_NODES);
+      buffer.putInt(MAGIC_OFFSET, MAGIC);
+      buffer.putInt(VERSION_OFFSET, VERSION);
+      buffer.putInt(WIDTH_OFFSET, codec.width());
+      setRoot(NIL);
+      buffer.putInt(FREE_OFFSET, NIL);
+      buffer.putInt(USED_OFFSET, 0);
+      buffer.putInt(COUNT_OFFSET, 0);
+    }else{
+      map((int)((channel.size() - HEADER) / nodeSize));
+      if (buffer.getInt(MAGIC_OFFSET) != MAGIC
+          || buffer.getInt(VERSION_OFFSET) != VERSION){
+        channel.close();
+        throw new IllegalArgumentException(file + " does not hold a MappedBinarySearchTree");
+      }
+      if (buffer.getInt(WIDTH_OFFSET) != codec.width()){
+        channel.close();
+        throw new IllegalArgumentException(file + " holds keys of width "
+          + buffer.getInt(WIDTH_OFFSET));
+      }
+    }
+  }
+
+  private void map(int nodes) throws IOException{
+    long bytes = HEADER + (long)nodes * nodeSize;
+    if (bytes > Integer.MAX_VALUE){
+      throw new IllegalStateException("MappedBinarySearchTree is full");
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+    keyView = buffer.duplicate();
+    capacity = nodes;
+  }
+
+  /**
+   * Writes all changes made so far to the storage device.
+   */
+  public void force(){
+    buffer.force();
+  }
+
+  /**
+   * Writes all changes to the storage device and closes the file. The
+   * tree must not be used afterwards.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  public void close() throws IOException{
+    force();
+    channel.close();
+  }
+
+  /**
+   * Returns true if this tree is empty and false otherwise.
+   *
+   * @return true if this tree is empty, false otherwise
+   */
+  public boolean isEmpty(){
+    return root() == NIL;
+  }
+
+  /**
+   * Returns the number of elements in this tree.
+   *
+   * @return the number of elements in the tree
+   */
+  public int size(){
+    return buffer.getInt(COUNT_OFFSET);
+  }
+
+  /**
+   * Returns the height of this tree, -1 if it is empty.
+   *
+   * @return the height of the tree
+   */
+  public int getHeight(){
+    return height(root());
+  }
+
+  /**
+   * Adds the specified element to this tree. Note that equal elements are
+   * added to the right.
+   *
+   * @param element the element to be added
+   * @throws IOException if the file has to grow and cannot be remapped
+   */
+  public void addElement(T element) throws IOException{
+    if (!(element instanceof Comparable)){
+      throw new NonComparableElementException("MappedBinarySearchTree");
+    }
+    Comparable<T> comparableElement = (Comparable<T>)element;
+    int node = newNode(element);
+    int depth = 0;
+    int current = root();
+    while (current != NIL){
+      path[depth] = current;
+      wentLeft[depth] = comparableElement.compareTo(key(current)) < 0;
+      current = wentLeft[depth] ? left(current) : right(current);
+      depth++;
+    }
+    setRoot(retrace(0, depth, node));
+    buffer.putInt(COUNT_OFFSET, size() + 1);
+  }
+
+  /**
+   * Returns true if this tree contains an element equal to the target.
+   *
+   * @param targetElement the element being sought
+   * @return true if the element is in this tree
+   */
+  public boolean contains(T targetElement){
+    return findNode(targetElement) != NIL;
+  }
+
+  /**
+   * Returns the element of this tree equal to the target, as decoded from
+   * the file.
+   *
+   * @param targetElement the element being sought
+   * @return the stored element
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public T find(T targetElement) throws ElementNotFoundException{
+    int node = findNode(targetElement);
+    if (node == NIL){
+      throw new ElementNotFoundException("MappedBinarySearchTree");
+    }
+    return key(node);
+  }
+
+  private int findNode(T targetElement){
+    Comparable<T> comparableElement = (Comparable<T>)targetElement;
+    int current = root();
+    while (current != NIL){
+      int comparison = comparableElement.compareTo(key(current));
+      if (comparison == 0){
+        return current;
+      }
+      current = (comparison < 0) ? left(current) : right(current);
+    }
+    return NIL;
+  }
+
+  /**
+   * Removes one element equal to the target from this tree.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeElement(T targetElement) throws ElementNotFoundException{
+    Comparable<T> comparableElement = (Comparable<T>)targetElement;
+    int depth = 0;
+    int current = root();
+    while (current != NIL){
+      int comparison = comparableElement.compareTo(key(current));
+      if (comparison == 0){
+        break;
+      }
+      path[depth] = current;
+      wentLeft[depth] = comparison < 0;
+      current = wentLeft[depth] ? left(current) : right(current);
+      depth++;
+    }
+    if (current == NIL){
+      throw new ElementNotFoundException("MappedBinarySearchTree");
+    }
+    setRoot(retrace(0, depth, remove(current, depth)));
+    freeNode(current);
+    buffer.putInt(COUNT_OFFSET, size() - 1);
+  }
+
+  /**
+   * Returns the smallest element in this tree without removing it.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMin() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("MappedBinarySearchTree");
+    }
+    int current = root();
+    while (left(current) != NIL){
+      current = left(current);
+    }
+    return key(current);
+  }
+
+  /**
+   * Returns the largest element in this tree without removing it.
+   *
+   * @return the largest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T findMax() throws EmptyCollectionException{
+    if (isEmpty()){
+      throw new EmptyCollectionException("MappedBinarySearchTree");
+    }
+    int current = root();
+    while (right(current) != NIL){
+      current = right(current);
+    }
+    return key(current);
+  }
+
+  /**
+   * Removes and returns the smallest element in this tree.
+   *
+   * @return the smallest element
+   * @throws EmptyCollectionException if the tree is empty
+   */
+  public T removeMin() throws EmptyCollectionException{
+    T result = findMin();
+    removeElement(result);
+    return result;
+  }
+
+  /**
+   * Passes every element of this tree to the action in ascending order.
+   *
+   * @param action the action to perform on each element
+   */
+  public void forEach(Consumer<? super T> action){
+    int[] stack = new int[getHeight() + 1];
+    int depth = 0;
+    int current = root();
+    while (current != NIL || depth > 0){
+      while (current != NIL){
+        stack[depth++] = current;
+        current = left(current);
+      }
+      current = stack[--depth];
+      action.accept(key(current));
+      current = right(current);
+    }
+  }
+
+  // ----- node access -----
+
+  private int offset(int node){
+    return HEADER + node * nodeSize;
+  }
+
+  private int root(){
+    return buffer.getInt(ROOT_OFFSET);
+  }
+
+  private void setRoot(int node){
+    buffer.putInt(ROOT_OFFSET, node);
+  }
+
+  private int left(int node){
+    return buffer.getInt(offset(node) + LEFT);
+  }
+
+  private int right(int node){
+    return buffer.getInt(offset(node) + RIGHT);
+  }
+
+  private void setLeft(int node, int child){
+    buffer.putInt(offset(node) + LEFT, child);
+  }
+
+  private void setRight(int node, int child){
+    buffer.putInt(offset(node) + RIGHT, child);
+  }
+
+  private int height(int node){
+    return (node == NIL) ? -1 : buffer.get(offset(node) + HEIGHT);
+  }
+
+  private T key(int node){
+    int start = offset(node) + KEY;
+    keyView.limit(start + codec.width()).position(start);
+    return codec.decode(keyView);
+  }
+
+  private int newNode(T element) throws IOException{
+    int node = buffer.getInt(FREE_OFFSET);
+    if (node != NIL){
+      buffer.putInt(FREE_OFFSET, left(node));
+    }else{
+      node = buffer.getInt(USED_OFFSET);
+      if (node == capacity){
+        map(capacity + (capacity >> 1));
+      }
+      buffer.putInt(USED_OFFSET, node + 1);
+    }
+    int start = offset(node);
+    buffer.putInt(start + LEFT, NIL);
+    buffer.putInt(start + RIGHT, NIL);
+    buffer.put(start + HEIGHT, (byte)0);
+    keyView.limit(start + KEY + codec.width()).position(start + KEY);
+    codec.encode(element, keyView);
+    return node;
+  }
+
+  private void freeNode(int node){
+    setLeft(node, buffer.getInt(FREE_OFFSET));
+    buffer.putInt(FREE_OFFSET, node);
+  }
+
+  // ----- AVL maintenance, as in LinkedBinarySearchTree -----
+
+  private int remove(int node, int depth){
+    if (left(node) == NIL){         // CASE 1: Right Child Only
+      return right(node);
+    }else if (right(node) == NIL){  // CASE 2: Left Child Only
+      return left(node);
+    }else{                           // CASE 3: both L & R children
+      int base = depth;
+      int current = right(node);
+      while (left(current) != NIL){
+        path[depth] = current;
+        wentLeft[depth] = true;
+        depth++;
+        current = left(current);
+      }
+      setRight(current, retrace(base, depth, right(current)));
+      setLeft(current, left(node));
+      return rebalance(current);
+    }
+  }
+
+  private int retrace(int base, int depth, int child){
+    for (int i = depth - 1; i >= base; i--){
+      int parent = path[i];
+      if (wentLeft[i]){
+        setLeft(parent, child);
+      }else{
+        setRight(parent, child);
+      }
+      int oldHeight = height(parent);
+      child = rebalance(parent);
+      if (height(child) == oldHeight){
+        // nothing above can change, apart from the link to a rotated subtree
+        if (i > base){
+          if (wentLeft[i - 1]){
+            setLeft(path[i - 1], child);
+          }else{
+            setRight(path[i - 1], child);
+          }
+          return path[base];
+        }
+        return child;
+      }
+    }
+    return child;
+  }
+
+  private int balanceFactor(int node){
+    return height(right(node)) - height(left(node));
+  }
+
+  private void update(int node){
+    buffer.put(offset(node) + HEIGHT,
+      (byte)(Math.max(height(left(node)), height(right(node))) + 1));
+  }
+
+  private int rebalance(int node){
+    update(node);
+    if (balanceFactor(node) == -2){
+      if (balanceFactor(left(node)) <= 0){
+        node = singleRightRotation(node);
+      }else{
+        node = doubleLeftRightRotation(node);
+      }
+    }else if (balanceFactor(node) == 2){
+      if (balanceFactor(right(node)) >= 0){
+        node = singleLeftRotation(node);
+      }else{
+        node = doubleRightLeftRotation(node);
+      }
+    }
+    return node;
+  }
+
+  private int singleRightRotation(int oldRoot){
+    int newRoot = left(oldRoot);
+    setLeft(oldRoot, right(newRoot));
+    setRight(newRoot, oldRoot);
+    update(oldRoot);
+    update(newRoot);
+    return newRoot;
+  }
+
+  private int singleLeftRotation(int oldRoot){
+    int newRoot = right(oldRoot);
+    setRight(oldRoot, left(newRoot));
+    setLeft(newRoot, oldRoot);
+    update(oldRoot);
+    update(newRoot);
+    return newRoot;
+  }
+
+  private int doubleLeftRightRotation(int oldRoot){
+    setLeft(oldRoot, singleLeftRotation(left(oldRoot)));
+    return singleRightRotation(oldRoot);
+  }
+
+  private int doubleRightLeftRotation(int oldRoot){
+    setRight(oldRoot, singleRightRotation(right(oldRoot)));
+    return singleLeftRotation(oldRoot);
+  }
+}
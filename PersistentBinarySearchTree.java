@@ -0,0 +1,274 @@
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PersistentBinarySearchTree is an AVL tree whose nodes are never changed
+ * once they have been published. An update copies the O(log n) nodes on
+ * its search path, rebalancing the copies, and installs the new root with
+ * a compare-and-set; the nodes it did not touch are shared with the
+ * previous version. Readers therefore need no locks: snapshot() captures
+ * the current root in O(1) time, and the tree it returns stays valid and
+ * unchanged however long it is used, whatever is written afterwards.
+ * Writers that race simply retry. Note that equal elements are added to
+ * the right.
+ */
+public class PersistentBinarySearchTree<T> implements Iterable<T>{
+  private final AtomicReference<BinaryTreeNode<T>> root =
+    new AtomicReference<BinaryTreeNode<T>>();
+
+  /**
+   * Creates an empty tree.
+   */
+  public PersistentBinarySearchTree(){
+    super();
+  }
+
+  /**
+   * Returns true if this tree is empty and false otherwise.
+   *
+   * @return true if this tree is empty, false otherwise
+   */
+  public boolean isEmpty(){
+    return root.get() == null;
+  }
+
+  /**
+   * Returns the number of elements in this tree.
+   *
+   * @return the number of elements in the tree
+   */
+  public int size(){
+    return size(root.get());
+  }
+
+  /**
+   * Returns the height of this tree, -1 if it is empty.
+   *
+   * @return the height of the tree
+   */
+  public int getHeight(){
+    return height(root.get());
+  }
+
+  /**
+   * Adds the specified element to this tree, publishing a new version that
+   * shares every node off the insertion path with the old one.
+   *
+   * @param element the element to be added
+   * @throws NonComparableElementException if the element is not comparable
+   */
+  public void addElement(T element){
+    if (!(element instanceof Comparable)){
+      throw new NonComparableElementException("PersistentBinarySearchTree");
+    }
+    Comparable<T> comparableElement = (Comparable<T>)element;
+    BinaryTreeNode<T> current, updated;
+    do{
+      current = root.get();
+      updated = insert(comparableElement, current);
+    }while (!root.compareAndSet(current, updated));
+  }
+
+  /**
+   * Removes one occurrence of the specified element from this tree,
+   * publishing a new version without it.
+   *
+   * @param targetElement the element to be removed
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public void removeElement(T targetElement) throws ElementNotFoundException{
+    Comparable<T> comparableElement = (Comparable<T>)targetElement;
+    BinaryTreeNode<T> current, updated;
+    do{
+      current = root.get();
+      updated = delete(comparableElement, current);
+      if (updated == current){
+        throw new ElementNotFoundException("PersistentBinarySearchTree");
+      }
+    }while (!root.compareAndSet(current, updated));
+  }
+
+  /**
+   * Returns true if the current version of this tree contains an element
+   * equal to the target.
+   *
+   * @param targetElement the element being sought
+   * @return true if the element is in the tree
+   */
+  public boolean contains(T targetElement){
+    return findNode(root.get(), targetElement) != null;
+  }
+
+  /**
+   * Returns the element of the current version of this tree that is equal
+   * to the target.
+   *
+   * @param targetElement the element being sought
+   * @return the matching element
+   * @throws ElementNotFoundException if the element is not in the tree
+   */
+  public T find(T targetElement) throws ElementNotFoundException{
+    BinaryTreeNode<T> node = findNode(root.get(), targetElement);
+    if (node == null){
+      throw new ElementNotFoundException("PersistentBinarySearchTree");
+    }
+    return node.element;
+  }
+
+  /**
+   * Returns a read-only binary search tree holding the current version of
+   * this tree. It costs O(1) time, takes no lock, and later updates of this
+   * tree do not show through it. Every query of LinkedBinarySearchTree
+   * works on the snapshot; operations that would change it throw an
+   * UnsupportedOperationException.
+   *
+   * @return a snapshot of this tree
+   */
+  public LinkedBinarySearchTree<T> snapshot(){
+    return new Snapshot<T>(root.get());
+  }
+
+  /**
+   * Returns an iterator over a snapshot of this tree, in ascending order.
+   *
+   * @return an iterator over the elements of the current version
+   */
+  public Iterator<T> iterator(){
+    return new LinkedBinaryTree.InOrderIterator<T>(root.get());
+  }
+
+  public String toString(){
+    return snapshot().toString();
+  }
+
+  private static int size(BinaryTreeNode<?> node){
+    return (node == null) ? 0 : node.size;
+  }
+
+  private static int height(BinaryTreeNode<?> node){
+    return (node == null) ? -1 : node.height;
+  }
+
+  private BinaryTreeNode<T> findNode(BinaryTreeNode<T> node, T targetElement){
+    Comparable<T> comparableElement = (Comparable<T>)targetElement;
+    while (node != null){
+      int comparison = comparableElement.compareTo(node.element);
+      if (comparison == 0){
+        return node;
+      }
+      node = (comparison < 0) ? node.left : node.right;
+    }
+    return null;
+  }
+
+  /**
+   * Returns a copy of the subtree with the element inserted.
+   */
+  private BinaryTreeNode<T> insert(Comparable<T> element, BinaryTreeNode<T> node){
+    if (node == null){
+      return new BinaryTreeNode<T>((T)element);
+    }
+    if (element.compareTo(node.element) < 0){
+      return balance(node.element, insert(element, node.left), node.right);
+    }
+    return balance(node.element, node.left, insert(element, node.right));
+  }
+
+  /**
+   * Returns a copy of the subtree without one element equal to the target,
+   * or the subtree itself if there is no such element.
+   */
+  private BinaryTreeNode<T> delete(Comparable<T> element, BinaryTreeNode<T> node){
+    if (node == null){
+      return null;
+    }
+    int comparison = element.compareTo(node.element);
+    if (comparison < 0){
+      BinaryTreeNode<T> left = delete(element, node.left);
+      return (left == node.left) ? node : balance(node.element, left, node.right);
+    }
+    if (comparison > 0){
+      BinaryTreeNode<T> right = delete(element, node.right);
+      return (right == node.right) ? node : balance(node.element, node.left, right);
+    }
+    if (node.left == null){
+      return node.right;
+    }
+    if (node.right == null){
+      return node.left;
+    }
+    BinaryTreeNode<T> successor = node.right;
+    while (successor.left != null){
+      successor = successor.left;
+    }
+    return balance(successor.element, node.left, deleteMin(node.right));
+  }
+
+  private BinaryTreeNode<T> deleteMin(BinaryTreeNode<T> node){
+    if (node.left == null){
+      return node.right;
+    }
+    return balance(node.element, deleteMin(node.left), node.right);
+  }
+
+  /**
+   * Creates a new node over two subtrees whose heights differ by at most
+   * one, setting its height and size.
+   */
+  private BinaryTreeNode<T> node(T element, BinaryTreeNode<T> left,
+    BinaryTreeNode<T> right){
+    BinaryTreeNode<T> node = new BinaryTreeNode<T>(element);
+    node.left = left;
+    node.right = right;
+    node.height = Math.max(height(left), height(right)) + 1;
+    node.size = size(left) + size(right) + 1;
+    return node;
+  }
+
+  /**
+   * Creates a new node over two subtrees whose heights differ by at most
+   * two, rotating copies of the nodes involved if they differ by two.
+   * The existing nodes are left as they are.
+   */
+  private BinaryTreeNode<T> balance(T element, BinaryTreeNode<T> left,
+    BinaryTreeNode<T> right){
+    int balanceFactor = height(right) - height(left);
+    if (balanceFactor == -2){
+      if (height(left.left) >= height(left.right)){
+        // single right rotation
+        return node(left.element, left.left, node(element, left.right, right));
+      }
+      // double left-right rotation
+      BinaryTreeNode<T> pivot = left.right;
+      return node(pivot.element, node(left.element, left.left, pivot.left),
+        node(element, pivot.right, right));
+    }
+    if (balanceFactor == 2){
+      if (height(right.right) >= height(right.left)){
+        // single left rotation
+        return node(right.element, node(element, left, right.left), right.right);
+      }
+      // double right-left rotation
+      BinaryTreeNode<T> pivot = right.left;
+      return node(pivot.element, node(element, left, pivot.left),
+        node(right.element, pivot.right, right.right));
+    }
+    return node(element, left, right);
+  }
+
+  /**
+   * Snapshot is a read-only binary search tree over one published version
+   * of a PersistentBinarySearchTree. Its nodes are shared with that tree
+   * and its later versions, so it refuses every change.
+   */
+  private static class Snapshot<T> extends LinkedBinarySearchTree<T>{
+    public Snapshot(BinaryTreeNode<T> root){
+      super();
+      this.root = root;
+    }
+
+    protected void checkModifiable(){
+      throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+  }
+}
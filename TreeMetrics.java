@@ -0,0 +1,237 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * TreeMetrics holds the counters of an InstrumentedBinarySearchTree:
+ * rotations by kind, comparisons, a histogram of search depths, and the
+ * latencies of insertions, removals and searches with the number of
+ * elements inserted and removed, which batch operations make many of at
+ * once. They can be read from
+ * any thread, directly or through JMX once registered.
+ */
+public class TreeMetrics implements TreeMetricsMXBean{
+  public static final int SINGLE_RIGHT = 0;
+  public static final int SINGLE_LEFT = 1;
+  public static final int DOUBLE_LEFT_RIGHT = 2;
+  public static final int DOUBLE_RIGHT_LEFT = 3;
+
+  public static final int INSERT = 0;
+  public static final int REMOVE = 1;
+  public static final int SEARCH = 2;
+
+  // an AVL tree of 2^31 elements is less than 46 levels high
+  private static final int MAX_DEPTH = 64;
+
+  private volatile boolean enabled = true;
+  private final LongAdder[] rotations = adders(4);
+  private final LongAdder[] operations = adders(3);
+  private final LongAdder[] elements = adders(3);
+  private final LongAdder[] nanos = adders(3);
+  private final LongAccumulator[] maxNanos = new LongAccumulator[3];
+  private final LongAdder comparisons = new LongAdder();
+  private final AtomicLongArray depths = new AtomicLongArray(MAX_DEPTH);
+  private ObjectName name;
+
+  /**
+   * Creates a set of metrics, all zero, with recording enabled.
+   */
+  public TreeMetrics(){
+    for (int i = 0; i < maxNanos.length; i++){
+      maxNanos[i] = new LongAccumulator(Math::max, 0);
+    }
+  }
+
+  private static LongAdder[] adders(int n){
+    LongAdder[] result = new LongAdder[n];
+    for (int i = 0; i < n; i++){
+      result[i] = new LongAdder();
+    }
+    return result;
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server under the name
+   * avltree:type=TreeMetrics,name="...".
+   *
+   * @param treeName the name that tells this tree apart from others
+   * @return the name the metrics were registered under
+   * @throws JMException if the registration fails
+   */
+  public synchronized ObjectName register(String treeName) throws JMException{
+    unregister();
+    ObjectName objectName = new ObjectName("avltree:type=TreeMetrics,name="
+      + ObjectName.quote(treeName));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    name = objectName;
+    return objectName;
+  }
+
+  /**
+   * Removes these metrics from the platform MBean server, if registered.
+   *
+   * @throws JMException if the removal fails
+   */
+  public synchronized void unregister() throws JMException{
+    if (name != null){
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      name = null;
+    }
+  }
+
+  /**
+   * Counts a rotation of the specified kind.
+   *
+   * @param kind SINGLE_RIGHT, SINGLE_LEFT, DOUBLE_LEFT_RIGHT or DOUBLE_RIGHT_LEFT
+   */
+  public void rotation(int kind){
+    rotations[kind].increment();
+  }
+
+  /**
+   * Records one operation on a single element.
+   *
+   * @param operation INSERT, REMOVE or SEARCH
+   * @param comparisonCount the comparisons the operation made
+   * @param elapsed the latency of the operation in nanoseconds
+   */
+  public void operation(int operation, int comparisonCount, long elapsed){
+    operation(operation, 1, comparisonCount, elapsed);
+  }
+
+  /**
+   * Records one operation, which may be a batch of many elements.
+   *
+   * @param operation INSERT, REMOVE or SEARCH
+   * @param elementCount the elements the operation inserted or removed
+   * @param comparisonCount the comparisons the operation made
+   * @param elapsed the latency of the operation in nanoseconds
+   */
+  public void operation(int operation, int elementCount, int comparisonCount,
+    long elapsed){
+    operations[operation].increment();
+    elements[operation].add(elementCount);
+    nanos[operation].add(elapsed);
+    maxNanos[operation].accumulate(elapsed);
+    comparisons.add(comparisonCount);
+    if (operation == SEARCH){
+      // removeMin and removeMax find the extremes without comparing, so
+      // only searches tell how deep the tree is
+      depths.incrementAndGet(Math.min(comparisonCount, MAX_DEPTH - 1));
+    }
+  }
+
+  public boolean isEnabled(){
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled){
+    this.enabled = enabled;
+  }
+
+  public long getSingleRightRotations(){
+    return rotations[SINGLE_RIGHT].sum();
+  }
+
+  public long getSingleLeftRotations(){
+    return rotations[SINGLE_LEFT].sum();
+  }
+
+  public long getDoubleLeftRightRotations(){
+    return rotations[DOUBLE_LEFT_RIGHT].sum();
+  }
+
+  public long getDoubleRightLeftRotations(){
+    return rotations[DOUBLE_RIGHT_LEFT].sum();
+  }
+
+  public long getInsertions(){
+    return operations[INSERT].sum();
+  }
+
+  public long getRemovals(){
+    return operations[REMOVE].sum();
+  }
+
+  public long getSearches(){
+    return operations[SEARCH].sum();
+  }
+
+  public long getInsertedElements(){
+    return elements[INSERT].sum();
+  }
+
+  public long getRemovedElements(){
+    return elements[REMOVE].sum();
+  }
+
+  public long getComparisons(){
+    return comparisons.sum();
+  }
+
+  public double getMeanComparisons(){
+    long count = getInsertions() + getRemovals() + getSearches();
+    return (count == 0) ? 0 : (double)getComparisons() / count;
+  }
+
+  public long[] getDepthHistogram(){
+    // drop the empty tail
+    int length = depths.length();
+    while (length > 0 && depths.get(length - 1) == 0){
+      length--;
+    }
+    long[] result = new long[length];
+    for (int i = 0; i < length; i++){
+      result[i] = depths.get(i);
+    }
+    return result;
+  }
+
+  private double mean(int operation){
+    long count = operations[operation].sum();
+    return (count == 0) ? 0 : (double)nanos[operation].sum() / count;
+  }
+
+  public double getMeanInsertNanos(){
+    return mean(INSERT);
+  }
+
+  public long getMaxInsertNanos(){
+    return maxNanos[INSERT].get();
+  }
+
+  public double getMeanRemoveNanos(){
+    return mean(REMOVE);
+  }
+
+  public long getMaxRemoveNanos(){
+    return maxNanos[REMOVE].get();
+  }
+
+  public double getMeanSearchNanos(){
+    return mean(SEARCH);
+  }
+
+  public long getMaxSearchNanos(){
+    return maxNanos[SEARCH].get();
+  }
+
+  public void reset(){
+    for (LongAdder adder : rotations){
+      adder.reset();
+    }
+    for (int i = 0; i < operations.length; i++){
+      operations[i].reset();
+      elements[i].reset();
+      nanos[i].reset();
+      maxNanos[i].reset();
+    }
+    comparisons.reset();
+    for (int i = 0; i < depths.length(); i++){
+      depths.set(i, 0);
+    }
+  }
+}
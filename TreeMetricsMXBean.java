@@ -0,0 +1,90 @@
+/**
+ * TreeMetricsMXBean is the management interface of the metrics kept by
+ * an InstrumentedBinarySearchTree.
+ */
+public interface TreeMetricsMXBean{
+  /**
+   * Returns true if the tree is recording metrics.
+   *
+   * @return true if recording is on
+   */
+  public boolean isEnabled();
+
+  /**
+   * Turns recording on or off.
+   *
+   * @param enabled true to record metrics
+   */
+  public void setEnabled(boolean enabled);
+
+  public long getSingleRightRotations();
+
+  public long getSingleLeftRotations();
+
+  public long getDoubleLeftRightRotations();
+
+  public long getDoubleRightLeftRotations();
+
+  public long getInsertions();
+
+  public long getRemovals();
+
+  public long getSearches();
+
+  /**
+   * Returns the number of elements inserted by the recorded insertions,
+   * which is larger than getInsertions() once batches have been added.
+   *
+   * @return the number of elements inserted
+   */
+  public long getInsertedElements();
+
+  /**
+   * Returns the number of elements removed by the recorded removals.
+   *
+   * @return the number of elements removed
+   */
+  public long getRemovedElements();
+
+  /**
+   * Returns the number of element comparisons made by the recorded
+   * operations.
+   *
+   * @return the number of comparisons
+   */
+  public long getComparisons();
+
+  /**
+   * Returns the mean number of comparisons per recorded operation.
+   *
+   * @return the mean number of comparisons
+   */
+  public double getMeanComparisons();
+
+  /**
+   * Returns the number of searches that made i comparisons, at index i.
+   * The comparisons a search makes follow the depth it reaches; the last
+   * entry also counts the deeper searches. Insertions and removals are
+   * not counted.
+   *
+   * @return the histogram of search depths
+   */
+  public long[] getDepthHistogram();
+
+  public double getMeanInsertNanos();
+
+  public long getMaxInsertNanos();
+
+  public double getMeanRemoveNanos();
+
+  public long getMaxRemoveNanos();
+
+  public double getMeanSearchNanos();
+
+  public long getMaxSearchNanos();
+
+  /**
+   * Sets all the counters back to zero.
+   */
+  public void reset();
+}
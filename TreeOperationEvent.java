@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TreeOperationEvent is the Flight Recorder event committed for each
+ * insertion, removal and search, or batch of them, in an
+ * InstrumentedBinarySearchTree while
+ * its metrics are enabled. The duration of the event is the latency of
+ * the operation. When no recording has the event enabled, committing it
+ * costs next to nothing.
+ */
+@Name("avltree.TreeOperation")
+@Label("Tree Operation")
+@Category("AVL Tree")
+@Description("An insertion, removal or search in a binary search tree")
+@StackTrace(false)
+public class TreeOperationEvent extends Event{
+  @Label("Operation")
+  String operation;
+
+  @Label("Elements")
+  @Description("Elements inserted or removed, more than one for a batch")
+  int elements;
+
+  @Label("Comparisons")
+  @Description("Element comparisons made, following the search depth")
+  int comparisons;
+
+  @Label("Rotations")
+  @Description("Rotations made while rebalancing, a double rotation counting once")
+  int rotations;
+
+  @Label("Size")
+  @Description("Number of elements in the tree afterwards")
+  int size;
+}
@@ -0,0 +1,281 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * TreeSnapshot reads and writes the binary snapshot format of a
+ * LinkedBinarySearchTree. A snapshot is a header followed by one record
+ * per node in ascending order and, if checksummed, the CRC-32C of
+ * everything before it. A record is the element as written by a Codec,
+ * preceded by its length if the codec is not fixed-width and followed by
+ * its occurrence count if the tree is a multiset. All data passes through
+ * a single direct buffer, so the channel sees few large transfers.
+ */
+class TreeSnapshot{
+  private static final int MAGIC = 0x41564c53; // "AVLS"
+  private static final int VERSION = 1;
+
+  // header layout: magic, version, flags, width, records
+  private static final int HEADER = 24;
+
+  private static final int CHECKSUM = 1;
+  private static final int MULTISET = 2;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private TreeSnapshot(){
+  }
+
+  /**
+   * Writer encodes the records of a snapshot into the channel.
+   */
+  static class Writer<T>{
+    private final WritableByteChannel channel;
+    private final Codec<T> codec;
+    private final int width;
+    private final boolean multiset;
+    private final CRC32C crc;
+    private ByteBuffer buffer;
+
+    /**
+     * Writes the header of a snapshot of the specified number of nodes.
+     *
+     * @param channel the channel to write to
+     * @param codec the codec for the elements
+     * @param records the number of nodes that will be written
+     * @param multiset whether each record carries an occurrence count
+     * @param checksum whether to end the snapshot with a CRC-32C
+     */
+    Writer(WritableByteChannel channel, Codec<T> codec, int records,
+      boolean multiset, boolean checksum){
+      this.channel = channel;
+      this.codec = codec;
+      this.width = codec.width();
+      this.multiset = multiset;
+      this.crc = checksum ? new CRC32C() : null;
+      buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, width + 8));
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt((checksum ? CHECKSUM : 0) | (multiset ? MULTISET : 0));
+      buffer.putInt(width);
+      buffer.putLong(records);
+    }
+
+    /**
+     * Writes the record of one node.
+     *
+     * @param node the node to write
+     * @throws IOException if writing to the channel fails
+     */
+    void write(BinaryTreeNode<T> node) throws IOException{
+      if (width > 0){
+        if (buffer.remaining() < width + 4){
+          flush();
+        }
+        codec.encode(node.element, buffer);
+      }else{
+        // encode after a gap for the length, in a fresh or larger buffer
+        // if the element does not fit
+        while (true){
+          if (buffer.remaining() < 4){
+            flush();
+          }
+          int start = buffer.position();
+          try{
+            buffer.position(start + 4);
+            codec.encode(node.element, buffer);
+            buffer.putInt(start, buffer.position() - start - 4);
+            break;
+          }catch (BufferOverflowException e){
+            buffer.position(start);
+            if (start == 0){
+              buffer = ByteBuffer.allocateDirect(2 * buffer.capacity());
+            }else{
+              flush();
+            }
+          }
+        }
+        if (multiset && buffer.remaining() < 4){
+          flush();
+        }
+      }
+      if (multiset){
+        buffer.putInt(node.count);
+      }
+    }
+
+    /**
+     * Writes out what is left in the buffer, followed by the checksum.
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    void finish() throws IOException{
+      flush();
+      if (crc != null){
+        buffer.putInt((int)crc.getValue());
+        buffer.flip();
+        drain();
+      }
+    }
+
+    private void flush() throws IOException{
+      buffer.flip();
+      if (crc != null){
+        crc.update(buffer.duplicate());
+      }
+      drain();
+    }
+
+    private void drain() throws IOException{
+      while (buffer.hasRemaining()){
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Reader decodes the records of a snapshot from the channel.
+   */
+  static class Reader<T>{
+    private final ReadableByteChannel channel;
+    private final Codec<T> codec;
+    private final int width;
+    private final boolean multiset;
+    private final CRC32C crc;
+    private final int records;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private int checked;   // the bytes of the buffer already checksummed
+
+    /**
+     * Reads and checks the header of a snapshot.
+     *
+     * @param channel the channel to read from
+     * @param codec the codec for the elements
+     * @throws IOException if reading from the channel fails
+     * @throws IllegalArgumentException if the channel does not hold a
+     *         snapshot written with a codec of the same width
+     */
+    Reader(ReadableByteChannel channel, Codec<T> codec) throws IOException{
+      this.channel = channel;
+      this.codec = codec;
+      buffer.flip();
+      require(HEADER);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+        throw new IllegalArgumentException("Not a tree snapshot");
+      }
+      int flags = buffer.getInt();
+      width = buffer.getInt();
+      if (width != codec.width()){
+        throw new IllegalArgumentException("Snapshot holds elements of width "
+          + width);
+      }
+      long count = buffer.getLong();
+      if (count < 0 || count > Integer.MAX_VALUE){
+        throw new IllegalArgumentException("Snapshot holds " + count
+          + " elements");
+      }
+      records = (int)count;
+      multiset = (flags & MULTISET) != 0;
+      crc = ((flags & CHECKSUM) != 0) ? new CRC32C() : null;
+    }
+
+    /**
+     * Returns the number of nodes in the snapshot.
+     */
+    int records(){
+      return records;
+    }
+
+    /**
+     * Returns true if the snapshot was taken of a multiset.
+     */
+    boolean isMultiset(){
+      return multiset;
+    }
+
+    /**
+     * Reads the record of the next node.
+     *
+     * @return a new node holding the element and its count, unlinked
+     * @throws IOException if the snapshot ends early or cannot be read
+     */
+    BinaryTreeNode<T> read() throws IOException{
+      BinaryTreeNode<T> node;
+      if (width > 0){
+        require(width);
+        int start = buffer.position();
+        node = new BinaryTreeNode<T>(codec.decode(buffer));
+        buffer.position(start + width);
+      }else{
+        require(4);
+        int length = buffer.getInt();
+        require(length);
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        node = new BinaryTreeNode<T>(codec.decode(buffer));
+        buffer.position(buffer.limit());
+        buffer.limit(limit);
+      }
+      if (multiset){
+        require(4);
+        node.count = buffer.getInt();
+      }
+      return node;
+    }
+
+    /**
+     * Checks the checksum, if there is one, after the last record.
+     *
+     * @throws IOException if the checksum does not match
+     */
+    void finish() throws IOException{
+      if (crc != null){
+        update();
+        require(4);
+        if (buffer.getInt() != (int)crc.getValue()){
+          throw new IOException("Snapshot checksum mismatch");
+        }
+      }
+    }
+
+    /**
+     * Makes sure that at least n bytes can be read from the buffer.
+     */
+    private void require(int n) throws IOException{
+      while (buffer.remaining() < n){
+        update();
+        if (n > buffer.capacity()){
+          ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(n,
+            2 * buffer.capacity()));
+          larger.put(buffer);
+          buffer = larger;
+        }else{
+          buffer.compact();
+        }
+        checked = 0;
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0){
+          throw new EOFException("Snapshot ends early");
+        }
+      }
+    }
+
+    /**
+     * Adds the bytes read since the last call to the checksum.
+     */
+    private void update(){
+      if (crc != null){
+        ByteBuffer consumed = buffer.duplicate();
+        consumed.position(checked).limit(buffer.position());
+        crc.update(consumed);
+      }
+      checked = buffer.position();
+    }
+  }
+}
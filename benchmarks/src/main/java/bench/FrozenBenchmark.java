@@ -0,0 +1,85 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FrozenBenchmark compares searches in a LinkedBinarySearchTree with
+ * searches in the same tree frozen, with and without keys, after loading
+ * it with uniformly random keys one addElement at a time, so that its
+ * nodes are spread over the heap as after a real load. Each call searches
+ * for one key of the stream, in stream order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms16g", "-Xmx16g"})
+public class FrozenBenchmark{
+  /** the frozen tree's key: an Integer is its own key */
+  private static final ToLongFunction<Integer> KEY = Integer::longValue;
+
+  @Param({"LinkedBinarySearchTree", "FrozenBinarySearchTree", "keyed"})
+  private String layout;
+
+  @Param({"1000000", "10000000", "100000000"})
+  private int size;
+
+  private Integer[] keys;
+  private Object tree;
+  private Object frozen;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    keys = KeyStream.UNIFORM.keys(size, 42);
+    tree = Trees.newTree();
+    for (Integer key : keys){
+      Trees.addElement(tree, key);
+    }
+    if (layout.equals("FrozenBinarySearchTree")){
+      frozen = Trees.freeze(tree);
+    }else if (layout.equals("keyed")){
+      frozen = Trees.freeze(tree, KEY);
+    }
+    if (frozen != null){
+      // the frozen tree is searched alone, as after dropping the tree
+      tree = null;
+    }
+  }
+
+  private Integer nextKey(){
+    Integer key = keys[next];
+    if (++next == keys.length){
+      next = 0;
+    }
+    return key;
+  }
+
+  @Benchmark
+  public Object find(){
+    Integer key = nextKey();
+    return (frozen == null) ? Trees.find(tree, key)
+      : Trees.frozenFind(frozen, key);
+  }
+
+  @Benchmark
+  public boolean contains(){
+    Integer key = nextKey();
+    return (frozen == null) ? Trees.contains(tree, key)
+      : Trees.frozenContains(frozen, key);
+  }
+}
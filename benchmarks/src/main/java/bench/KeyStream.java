@@ -0,0 +1,111 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * KeyStream generates the sequences of keys the benchmarks insert and
+ * search for.
+ */
+public enum KeyStream{
+  /** 0, 1, 2, ... n - 1 */
+  SORTED{
+    public Integer[] keys(int n, long seed){
+      Integer[] keys = new Integer[n];
+      for (int i = 0; i < n; i++){
+        keys[i] = i;
+      }
+      return keys;
+    }
+  },
+
+  /** n - 1, n - 2, ... 0 */
+  REVERSE_SORTED{
+    public Integer[] keys(int n, long seed){
+      Integer[] keys = new Integer[n];
+      for (int i = 0; i < n; i++){
+        keys[i] = n - 1 - i;
+      }
+      return keys;
+    }
+  },
+
+  /** uniformly random ints, nearly all distinct */
+  UNIFORM{
+    public Integer[] keys(int n, long seed){
+      Random random = new Random(seed);
+      Integer[] keys = new Integer[n];
+      for (int i = 0; i < n; i++){
+        keys[i] = random.nextInt();
+      }
+      return keys;
+    }
+  },
+
+  /**
+   * n keys drawn from n distinct values with Zipfian frequencies
+   * (exponent 0.99), so a few values make up most of the stream. The
+   * values are scattered over the int range rather than ordered by
+   * popularity.
+   */
+  ZIPFIAN{
+    public Integer[] keys(int n, long seed){
+      Zipfian zipfian = new Zipfian(n, 0.99, seed);
+      Integer[] keys = new Integer[n];
+      for (int i = 0; i < n; i++){
+        keys[i] = (int)(zipfian.next() * 0x9E3779B1L);
+      }
+      return keys;
+    }
+  };
+
+  /**
+   * Returns n keys of this stream.
+   *
+   * @param n the number of keys
+   * @param seed the seed of the random streams
+   * @return the keys, boxed once so the benchmarks do not measure boxing
+   */
+  public abstract Integer[] keys(int n, long seed);
+
+  /**
+   * Zipfian draws ranks 0 .. n - 1, rank i with probability proportional
+   * to 1 / (i + 1)^theta, in O(1) time per draw after O(n) set up, using
+   * the method of Gray et al., "Quickly Generating Billion-Record
+   * Synthetic Databases" (SIGMOD 1994).
+   */
+  private static class Zipfian{
+    private final int n;
+    private final double theta, alpha, zetaN, eta;
+    private final Random random;
+
+    public Zipfian(int n, double theta, long seed){
+      this.n = n;
+      this.theta = theta;
+      this.random = new Random(seed);
+      double zeta2 = zeta(2, theta);
+      zetaN = zeta(n, theta);
+      alpha = 1.0 / (1.0 - theta);
+      eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+
+    private static double zeta(int n, double theta){
+      double sum = 0;
+      for (int i = 1; i <= n; i++){
+        sum += 1 / Math.pow(i, theta);
+      }
+      return sum;
+    }
+
+    public long next(){
+      double u = random.nextDouble();
+      double uz = u * zetaN;
+      if (uz < 1.0){
+        return 0;
+      }
+      if (uz < 1.0 + Math.pow(0.5, theta)){
+        return 1;
+      }
+      return Math.min(n - 1, (long)(n * Math.pow(eta * u - eta + 1, alpha)));
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main runs the benchmarks selected on the command line, which takes the
+ * usual JMH options, always with the gc profiler so that the allocation
+ * rate is reported next to the time.
+ */
+public class Main{
+  public static void main(String[] args)
+    throws CommandLineOptionException, RunnerException{
+    Options options = new OptionsBuilder()
+      .parent(new CommandLineOptions(args))
+      .addProfiler(GCProfiler.class)
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,162 @@
+package bench;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Structure is the set of operations the benchmarks run, over either a
+ * LinkedBinarySearchTree or a java.util.TreeMap that counts the
+ * occurrences of each key, so that both hold every key of a stream with
+ * repeated keys.
+ */
+public interface Structure{
+  void add(Integer key);
+
+  Object find(Integer key);
+
+  boolean contains(Integer key);
+
+  void remove(Integer key);
+
+  Object removeMin();
+
+  int size();
+
+  Iterator<?> iterator();
+
+  /**
+   * Creates an empty structure of the named implementation.
+   *
+   * @param implementation "LinkedBinarySearchTree" or "TreeMap"
+   * @return the new structure
+   */
+  static Structure create(String implementation){
+    switch (implementation){
+      case "LinkedBinarySearchTree":
+        return new LinkedTree();
+      case "TreeMap":
+        return new Counts();
+      default:
+        throw new IllegalArgumentException(implementation);
+    }
+  }
+
+  /**
+   * A java.util.TreeMap from each key to its number of occurrences. Its
+   * size and iteration count every occurrence, as those of the tree do,
+   * though equal keys share an entry where the tree gives each a node.
+   */
+  final class Counts implements Structure{
+    private final TreeMap<Integer, Integer> counts =
+      new TreeMap<Integer, Integer>();
+    private int size;
+
+    public void add(Integer key){
+      counts.merge(key, 1, Integer::sum);
+      size++;
+    }
+
+    public Object find(Integer key){
+      return counts.containsKey(key) ? key : null;
+    }
+
+    public boolean contains(Integer key){
+      return counts.containsKey(key);
+    }
+
+    public void remove(Integer key){
+      Integer count = counts.get(key);
+      if (count != null){
+        if (count == 1){
+          counts.remove(key);
+        }else{
+          counts.put(key, count - 1);
+        }
+        size--;
+      }
+    }
+
+    public Object removeMin(){
+      Map.Entry<Integer, Integer> first = counts.firstEntry();
+      if (first == null){
+        return null;
+      }
+      Integer key = first.getKey();
+      if (first.getValue() == 1){
+        counts.pollFirstEntry();
+      }else{
+        counts.put(key, first.getValue() - 1);
+      }
+      size--;
+      return key;
+    }
+
+    public int size(){
+      return size;
+    }
+
+    public Iterator<?> iterator(){
+      Iterator<Map.Entry<Integer, Integer>> entries =
+        counts.entrySet().iterator();
+      return new Iterator<Integer>(){
+        private Integer key;
+        private int remaining;
+
+        public boolean hasNext(){
+          return remaining > 0 || entries.hasNext();
+        }
+
+        public Integer next(){
+          if (remaining == 0){
+            if (!entries.hasNext()){
+              throw new NoSuchElementException();
+            }
+            Map.Entry<Integer, Integer> entry = entries.next();
+            key = entry.getKey();
+            remaining = entry.getValue();
+          }
+          remaining--;
+          return key;
+        }
+      };
+    }
+  }
+
+  /**
+   * A LinkedBinarySearchTree, reached through method handles because the
+   * tree lives in the default package, which cannot be imported.
+   */
+  final class LinkedTree implements Structure{
+    private final Object tree = Trees.newTree();
+
+    public void add(Integer key){
+      Trees.addElement(tree, key);
+    }
+
+    public Object find(Integer key){
+      return Trees.find(tree, key);
+    }
+
+    public boolean contains(Integer key){
+      return Trees.contains(tree, key);
+    }
+
+    public void remove(Integer key){
+      Trees.removeElement(tree, key);
+    }
+
+    public Object removeMin(){
+      return Trees.removeMin(tree);
+    }
+
+    public int size(){
+      return Trees.size(tree);
+    }
+
+    public Iterator<?> iterator(){
+      return Trees.iterator(tree);
+    }
+  }
+}
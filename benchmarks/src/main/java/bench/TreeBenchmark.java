@@ -0,0 +1,125 @@
+package bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TreeBenchmark compares LinkedBinarySearchTree with a java.util.TreeMap
+ * of occurrence counts on the operations of a sorted collection, for each
+ * key stream and size. Both keep every key of the stream, so with the
+ * repeated keys of the Zipfian stream they hold the same elements.
+ *
+ * The single-element operations run against a structure already holding
+ * the whole stream and take one key of the stream per call, in stream
+ * order. To keep the size steady, removeElement and removeMin put the
+ * element back, so they measure a removal plus an insertion. build and
+ * traversal process the whole stream per call; divide by size for the
+ * cost per element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TreeBenchmark{
+  @Param({"LinkedBinarySearchTree", "TreeMap"})
+  private String implementation;
+
+  @Param({"SORTED", "REVERSE_SORTED", "UNIFORM", "ZIPFIAN"})
+  private KeyStream stream;
+
+  @Param({"1000", "10000", "100000", "1000000", "10000000"})
+  private int size;
+
+  private Integer[] keys;
+  private Structure structure;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    keys = stream.keys(size, 42);
+    structure = fill();
+  }
+
+  private Structure fill(){
+    Structure result = Structure.create(implementation);
+    for (Integer key : keys){
+      result.add(key);
+    }
+    return result;
+  }
+
+  private Integer nextKey(){
+    Integer key = keys[next];
+    if (++next == keys.length){
+      next = 0;
+    }
+    return key;
+  }
+
+  /**
+   * Adds the whole stream to an empty structure.
+   */
+  @Benchmark
+  public Structure build(){
+    return fill();
+  }
+
+  @Benchmark
+  public Object find(){
+    return structure.find(nextKey());
+  }
+
+  @Benchmark
+  public boolean contains(){
+    return structure.contains(nextKey());
+  }
+
+  /**
+   * Removes a key and adds it back.
+   */
+  @Benchmark
+  public void removeElement(){
+    Integer key = nextKey();
+    structure.remove(key);
+    structure.add(key);
+  }
+
+  /**
+   * Removes the least element and adds it back.
+   */
+  @Benchmark
+  public void removeMin(){
+    structure.add((Integer)structure.removeMin());
+  }
+
+  /**
+   * Visits every element in ascending order.
+   */
+  @Benchmark
+  public void traversal(Blackhole blackhole){
+    Iterator<?> elements = structure.iterator();
+    while (elements.hasNext()){
+      blackhole.consume(elements.next());
+    }
+  }
+
+  @Benchmark
+  public int size(){
+    return structure.size();
+  }
+}
@@ -0,0 +1,178 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+import java.util.function.ToLongFunction;
+
+/**
+ * Trees calls the methods of LinkedBinarySearchTree and of the
+ * FrozenBinarySearchTree it freezes into through method handles. JMH does
+ * not allow benchmarks in the default package, and a named package cannot
+ * import from it; the handles are held in static final fields, so the JIT
+ * compiler inlines them like direct calls.
+ */
+final class Trees{
+  private static final MethodHandle NEW_TREE;
+  private static final MethodHandle ADD_ELEMENT;
+  private static final MethodHandle FIND;
+  private static final MethodHandle CONTAINS;
+  private static final MethodHandle REMOVE_ELEMENT;
+  private static final MethodHandle REMOVE_MIN;
+  private static final MethodHandle SIZE;
+  private static final MethodHandle ITERATOR;
+  private static final MethodHandle FREEZE;
+  private static final MethodHandle FREEZE_BY_KEY;
+  private static final MethodHandle FROZEN_FIND;
+  private static final MethodHandle FROZEN_CONTAINS;
+
+  static{
+    try{
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      Class<?> tree = Class.forName("LinkedBinarySearchTree");
+      NEW_TREE = lookup.findConstructor(tree, MethodType.methodType(void.class))
+        .asType(MethodType.methodType(Object.class));
+      ADD_ELEMENT = virtual(lookup, tree, "addElement", void.class, Object.class);
+      FIND = virtual(lookup, tree, "find", Object.class, Object.class);
+      CONTAINS = virtual(lookup, tree, "contains", boolean.class, Object.class);
+      REMOVE_ELEMENT = virtual(lookup, tree, "removeElement", void.class,
+        Object.class);
+      REMOVE_MIN = virtual(lookup, tree, "removeMin", Object.class);
+      SIZE = virtual(lookup, tree, "size", int.class);
+      ITERATOR = virtual(lookup, tree, "iterator", Iterator.class);
+      Class<?> frozen = Class.forName("FrozenBinarySearchTree");
+      FREEZE = virtual(lookup, tree, "freeze", frozen)
+        .asType(MethodType.methodType(Object.class, Object.class));
+      FREEZE_BY_KEY = virtual(lookup, tree, "freeze", frozen,
+        ToLongFunction.class).asType(MethodType.methodType(Object.class,
+        Object.class, ToLongFunction.class));
+      FROZEN_FIND = virtual(lookup, frozen, "find", Object.class, Object.class);
+      FROZEN_CONTAINS = virtual(lookup, frozen, "contains", boolean.class,
+        Object.class);
+    }catch (ReflectiveOperationException e){
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Trees(){
+  }
+
+  /**
+   * Finds a public method of the tree and adapts it to take the tree as
+   * a plain Object.
+   */
+  private static MethodHandle virtual(MethodHandles.Lookup lookup,
+    Class<?> tree, String name, Class<?> returnType, Class<?>... parameters)
+    throws ReflectiveOperationException{
+    MethodHandle method = lookup.findVirtual(tree, name,
+      MethodType.methodType(returnType, parameters));
+    return method.asType(method.type().changeParameterType(0, Object.class));
+  }
+
+  static Object newTree(){
+    try{
+      return (Object)NEW_TREE.invokeExact();
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static void addElement(Object tree, Object element){
+    try{
+      ADD_ELEMENT.invokeExact(tree, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Object find(Object tree, Object element){
+    try{
+      return (Object)FIND.invokeExact(tree, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static boolean contains(Object tree, Object element){
+    try{
+      return (boolean)CONTAINS.invokeExact(tree, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static void removeElement(Object tree, Object element){
+    try{
+      REMOVE_ELEMENT.invokeExact(tree, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Object removeMin(Object tree){
+    try{
+      return (Object)REMOVE_MIN.invokeExact(tree);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static int size(Object tree){
+    try{
+      return (int)SIZE.invokeExact(tree);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Iterator<?> iterator(Object tree){
+    try{
+      return (Iterator<?>)ITERATOR.invokeExact(tree);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Object freeze(Object tree){
+    try{
+      return (Object)FREEZE.invokeExact(tree);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Object freeze(Object tree, ToLongFunction<?> key){
+    try{
+      return (Object)FREEZE_BY_KEY.invokeExact(tree, key);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static Object frozenFind(Object frozen, Object element){
+    try{
+      return (Object)FROZEN_FIND.invokeExact(frozen, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  static boolean frozenContains(Object frozen, Object element){
+    try{
+      return (boolean)FROZEN_CONTAINS.invokeExact(frozen, element);
+    }catch (Throwable e){
+      throw rethrow(e);
+    }
+  }
+
+  private static RuntimeException rethrow(Throwable e){
+    if (e instanceof RuntimeException){
+      return (RuntimeException)e;
+    }
+    if (e instanceof Error){
+      throw (Error)e;
+    }
+    return new IllegalStateException(e);
+  }
+}